@@ -0,0 +1,92 @@
+package hu.kazocsaba.v3d.mesh.format.ply;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.lwjglb.game.engine.MeshData;
+
+/**
+ * Compares the fast path of {@link PlyReader#readMeshData()} for binary files
+ * with fixed size vertices against the generic path, on a generated binary
+ * mesh with positions, normals, colors and triangles. The generic copy of the
+ * file gets an empty list property on every vertex, which is all that keeps
+ * it off the fast path. The mesh optimizer is turned off, so only decoding
+ * and packing are timed. Prints the best of a few runs and checks that both
+ * paths give the same buffers.
+ */
+public class PlyBenchmark {
+
+	private static final int VERTICES = 2000000;
+
+	private static final int FACES = 2000000;
+
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) throws Exception {
+		ByteBuffer fixed = generate(false);
+		ByteBuffer generic = generate(true);
+
+		long fastTime = Long.MAX_VALUE;
+		long genericTime = Long.MAX_VALUE;
+		for (int run = 0; run < RUNS; run++) {
+			long start = System.nanoTime();
+			MeshData fast = read(fixed);
+			long middle = System.nanoTime();
+			MeshData slow = read(generic);
+			long end = System.nanoTime();
+			fastTime = Math.min(fastTime, middle - start);
+			genericTime = Math.min(genericTime, end - middle);
+			if (run == 0 && (!fast.getVertices().equals(slow.getVertices())
+					|| !fast.getIndices().equals(slow.getIndices())))
+				throw new AssertionError("the fast and the generic path read different meshes");
+			fast.free();
+			slow.free();
+		}
+		System.out.printf("%.0f MB, %d vertices, %d faces: fast path %.0f ms, generic path %.0f ms, %.1fx%n",
+				fixed.remaining() / 1e6, VERTICES, FACES, fastTime / 1e6, genericTime / 1e6,
+				(double) genericTime / fastTime);
+	}
+
+	private static MeshData read(ByteBuffer file) throws Exception {
+		PlyReader reader = new PlyReader(file.duplicate());
+		reader.setOptimize(false);
+		return reader.readMeshData();
+	}
+
+	private static ByteBuffer generate(boolean listProperty) {
+		StringBuilder header = new StringBuilder();
+		header.append("ply\nformat binary_little_endian 1.0\n");
+		header.append("element vertex ").append(VERTICES).append('\n');
+		header.append("property float x\nproperty float y\nproperty float z\n");
+		header.append("property float nx\nproperty float ny\nproperty float nz\n");
+		header.append("property uchar red\nproperty uchar green\nproperty uchar blue\n");
+		if (listProperty)
+			header.append("property list uchar int extra\n");
+		header.append("element face ").append(FACES).append('\n');
+		header.append("property list uchar int vertex_indices\nend_header\n");
+		byte[] headerBytes = header.toString().getBytes(StandardCharsets.US_ASCII);
+
+		int vertexSize = 6 * 4 + 3 + (listProperty ? 1 : 0);
+		ByteBuffer file = ByteBuffer.allocate(headerBytes.length + VERTICES * vertexSize + FACES * (1 + 3 * 4))
+				.order(ByteOrder.LITTLE_ENDIAN);
+		file.put(headerBytes);
+		Random random = new Random(1);
+		for (int i = 0; i < VERTICES; i++) {
+			for (int c = 0; c < 6; c++)
+				file.putFloat(random.nextFloat() * 2 - 1);
+			for (int c = 0; c < 3; c++)
+				file.put((byte) random.nextInt(256));
+			if (listProperty)
+				file.put((byte) 0);
+		}
+		for (int i = 0; i < FACES; i++) {
+			file.put((byte) 3);
+			for (int c = 0; c < 3; c++)
+				file.putInt(random.nextInt(VERTICES));
+		}
+		file.flip();
+		return file;
+	}
+}
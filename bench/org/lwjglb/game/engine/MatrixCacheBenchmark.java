@@ -0,0 +1,112 @@
+package org.lwjglb.game.engine;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjglb.game.GameModel;
+
+/**
+ * Compares the cached matrices of {@link Transformation}, {@link Camera} and
+ * {@link GameModel} against recomputing every matrix on every request, the
+ * way the transformation used to, for 10000 models drawn in the three passes
+ * of a frame. One model in a hundred moves per frame. Prints the best of a
+ * few runs.
+ */
+public class MatrixCacheBenchmark {
+
+	private static final int MODELS = 10000;
+
+	private static final int PASSES = 3;
+
+	private static final int FRAMES = 200;
+
+	private static final int RUNS = 5;
+
+	private static final float FOV = (float) Math.toRadians(60);
+
+	public static void main(String[] args) {
+		GameModel[] models = new GameModel[MODELS];
+		for (int i = 0; i < MODELS; i++) {
+			models[i] = new GameModel(null, .5f);
+			models[i].setPosition(i % 100, 0, -(i / 100));
+			models[i].setRotation(0, i % 360, 0);
+		}
+		Camera camera = new Camera();
+		Transformation transformation = new Transformation();
+		Uncached uncached = new Uncached();
+
+		long uncachedTime = Long.MAX_VALUE;
+		long cachedTime = Long.MAX_VALUE;
+		double checksum = 0;
+		for (int run = 0; run < RUNS; run++) {
+			long start = System.nanoTime();
+			for (int frame = 0; frame < FRAMES; frame++) {
+				move(models, camera, frame);
+				Matrix4f projectionMatrix = uncached.getProjectionMatrix(FOV, 800, 600, .01f, 1000);
+				for (int pass = 0; pass < PASSES; pass++) {
+					Matrix4f viewMatrix = uncached.getViewMatrix(camera);
+					checksum += new Matrix4f(projectionMatrix).mul(viewMatrix).m00();
+					for (GameModel model : models) {
+						checksum += uncached.getModelMatrix(model).m30();
+					}
+				}
+			}
+			long middle = System.nanoTime();
+			for (int frame = 0; frame < FRAMES; frame++) {
+				move(models, camera, frame);
+				Matrix4f projectionMatrix = transformation.getProjectionMatrix(FOV, 800, 600, .01f, 1000);
+				for (int pass = 0; pass < PASSES; pass++) {
+					Matrix4f viewMatrix = transformation.getViewMatrix(camera);
+					checksum += transformation.getViewProjectionMatrix(projectionMatrix, viewMatrix).m00();
+					for (GameModel model : models) {
+						checksum += transformation.getModelMatrix(model).m30();
+					}
+				}
+			}
+			long end = System.nanoTime();
+			uncachedTime = Math.min(uncachedTime, middle - start);
+			cachedTime = Math.min(cachedTime, end - middle);
+		}
+		System.out.printf("%d models, %d passes: uncached %.2f ms/frame, cached %.2f ms/frame, %.1fx (%.0f)%n",
+				MODELS, PASSES, uncachedTime / 1e6 / FRAMES, cachedTime / 1e6 / FRAMES,
+				(double) uncachedTime / cachedTime, checksum);
+	}
+
+	private static void move(GameModel[] models, Camera camera, int frame) {
+		camera.moveRotation(0, .1f, 0);
+		for (int i = frame % 100; i < MODELS; i += 100) {
+			models[i].setRotation(0, frame % 360, 0);
+		}
+	}
+
+	/**
+	 * The transformation before the matrices were cached.
+	 */
+	private static class Uncached {
+
+		private final Matrix4f projectionMatrix = new Matrix4f();
+
+		private final Matrix4f viewMatrix = new Matrix4f();
+
+		private final Matrix4f worldMatrix = new Matrix4f();
+
+		Matrix4f getProjectionMatrix(float fov, float width, float height, float zNear, float zFar) {
+			return projectionMatrix.identity().perspective(fov, width / height, zNear, zFar);
+		}
+
+		Matrix4f getViewMatrix(Camera camera) {
+			Vector3f cameraPos = camera.getPosition();
+			Vector3f rotation = camera.getRotation();
+			viewMatrix.identity();
+			viewMatrix.rotate((float) Math.toRadians(rotation.x), new Vector3f(1, 0, 0))
+					.rotate((float) Math.toRadians(rotation.y), new Vector3f(0, 1, 0));
+			return viewMatrix.translate(-cameraPos.x, -cameraPos.y, -cameraPos.z);
+		}
+
+		Matrix4f getModelMatrix(GameModel model) {
+			return worldMatrix.identity().translate(model.getPosition())
+					.rotateX((float) Math.toRadians(model.getRotation().x))
+					.rotateY((float) Math.toRadians(model.getRotation().y))
+					.rotateZ((float) Math.toRadians(model.getRotation().z)).scale(model.getScale());
+		}
+	}
+}
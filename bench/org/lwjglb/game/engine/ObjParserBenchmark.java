@@ -0,0 +1,143 @@
+package org.lwjglb.game.engine;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.joml.Vector3f;
+
+/**
+ * Compares {@link ObjParser} against reading the same OBJ data line by line
+ * with regex splits, {@link Float#parseFloat(String)}, {@code Vector3f} lists
+ * and boxed indices, the way the OBJ loader used to. The data is a generated
+ * grid of positions, texture coordinates, normals and quads, held in memory so
+ * no disk access is timed. Prints the best of a few runs and checks that both
+ * read the same positions and indices.
+ */
+public class ObjParserBenchmark {
+
+	private static final int GRID = 300;
+
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) throws IOException {
+		byte[] obj = generate();
+
+		long linesTime = Long.MAX_VALUE;
+		long parserTime = Long.MAX_VALUE;
+		LineParser lines = null;
+		ObjParser parser = null;
+		for (int run = 0; run < RUNS; run++) {
+			long start = System.nanoTime();
+			lines = new LineParser();
+			lines.parse(obj);
+			long middle = System.nanoTime();
+			parser = new ObjParser();
+			parser.parse(ByteBuffer.wrap(obj));
+			long end = System.nanoTime();
+			linesTime = Math.min(linesTime, middle - start);
+			parserTime = Math.min(parserTime, end - middle);
+		}
+
+		check(parser.getPositionCount() == lines.positions.size(), "position count");
+		float[] positions = parser.getPositions();
+		for (int i = 0; i < lines.positions.size(); i++) {
+			Vector3f p = lines.positions.get(i);
+			check(positions[i * 3] == p.x && positions[i * 3 + 1] == p.y && positions[i * 3 + 2] == p.z,
+					"position " + i);
+		}
+		check(parser.getCornerCount() == lines.indices.size(), "corner count");
+		int[] corners = parser.getCornerPositions();
+		for (int i = 0; i < lines.indices.size(); i++) {
+			check(corners[i] == lines.indices.get(i), "corner " + i);
+		}
+		System.out.printf("%.1f MB, %d positions, %d triangles: lines %.1f ms, ObjParser %.1f ms, %.1fx%n",
+				obj.length / 1e6, parser.getPositionCount(), parser.getCornerCount() / 3, linesTime / 1e6,
+				parserTime / 1e6, (double) linesTime / parserTime);
+	}
+
+	private static byte[] generate() {
+		Random random = new Random(1);
+		StringBuilder out = new StringBuilder();
+		out.append("# generated grid\no grid\n");
+		for (int z = 0; z < GRID; z++) {
+			for (int x = 0; x < GRID; x++) {
+				out.append(String.format(Locale.ROOT, "v %f %f %f\n", x * .1f, random.nextFloat() - .5f, z * -.1f));
+				out.append(String.format(Locale.ROOT, "vt %f %f\n", (float) x / GRID, (float) z / GRID));
+				out.append(String.format(Locale.ROOT, "vn %f %f %f\n", random.nextFloat() - .5f, 1f,
+						random.nextFloat() - .5f));
+			}
+		}
+		for (int z = 0; z < GRID - 1; z++) {
+			for (int x = 0; x < GRID - 1; x++) {
+				int a = z * GRID + x + 1;
+				int b = a + 1;
+				int c = a + GRID + 1;
+				int d = a + GRID;
+				out.append("f ").append(a).append('/').append(a).append('/').append(a).append(' ').append(b).append('/')
+						.append(b).append('/').append(b).append(' ').append(c).append('/').append(c).append('/')
+						.append(c).append(' ').append(d).append('/').append(d).append('/').append(d).append('\n');
+			}
+		}
+		return out.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+	/**
+	 * The line based reading the OBJ loader used before {@link ObjParser},
+	 * with quads split into two triangles.
+	 */
+	private static class LineParser {
+
+		final List<Vector3f> positions = new ArrayList<>();
+
+		final List<Vector3f> normals = new ArrayList<>();
+
+		final List<Integer> indices = new ArrayList<>();
+
+		void parse(byte[] obj) throws IOException {
+			try (BufferedReader reader = new BufferedReader(
+					new InputStreamReader(new ByteArrayInputStream(obj), StandardCharsets.US_ASCII))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String[] tokens = line.split("\\s+");
+					switch (tokens[0]) {
+					case "v":
+						positions.add(new Vector3f(Float.parseFloat(tokens[1]), Float.parseFloat(tokens[2]),
+								Float.parseFloat(tokens[3])));
+						break;
+					case "vn":
+						normals.add(new Vector3f(Float.parseFloat(tokens[1]), Float.parseFloat(tokens[2]),
+								Float.parseFloat(tokens[3])));
+						break;
+					case "f":
+						for (int i = 2; i < tokens.length - 1; i++) {
+							indices.add(parseIndex(tokens[1]));
+							indices.add(parseIndex(tokens[i]));
+							indices.add(parseIndex(tokens[i + 1]));
+						}
+						break;
+					default:
+						break;
+					}
+				}
+			}
+		}
+
+		private static int parseIndex(String corner) {
+			return Integer.parseInt(corner.split("/")[0]) - 1;
+		}
+	}
+}
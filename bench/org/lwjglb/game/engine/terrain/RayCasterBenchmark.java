@@ -0,0 +1,61 @@
+package org.lwjglb.game.engine.terrain;
+
+import java.util.Random;
+
+import org.lwjglb.game.engine.utils.SimplexNoise;
+
+/**
+ * Measures how many rays per second {@link HeightfieldRayCaster} casts on one
+ * thread against a 2049x2049 noise terrain. The rays start above the terrain
+ * and point down at random angles, like picking with the cursor. Prints the
+ * time to build the caster and the best of a few runs.
+ */
+public class RayCasterBenchmark {
+
+	private static final int SIZE = 2049;
+
+	private static final int RAYS = 200000;
+
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) {
+		float[] heights = new float[SIZE * SIZE];
+		new SimplexNoise(128, .5, 3).fillNoise(heights, 0, 0, .05f, .05f, SIZE, SIZE);
+		for (int i = 0; i < heights.length; i++) {
+			heights[i] *= .1f;
+		}
+		float step = 1f / (SIZE - 1);
+		TerrainGrid grid = new TerrainGrid(SIZE, SIZE, heights, -.5f, -.5f, step, step);
+
+		long start = System.nanoTime();
+		HeightfieldRayCaster caster = new HeightfieldRayCaster(grid);
+		System.out.printf("%dx%d: build %.1f ms%n", SIZE, SIZE, (System.nanoTime() - start) / 1e6);
+
+		Random random = new Random(5);
+		float[] rays = new float[RAYS * 6];
+		for (int i = 0; i < RAYS; i++) {
+			rays[i * 6] = random.nextFloat() - .5f;
+			rays[i * 6 + 1] = .3f;
+			rays[i * 6 + 2] = random.nextFloat() - .5f;
+			rays[i * 6 + 3] = random.nextFloat() - .5f;
+			rays[i * 6 + 4] = -random.nextFloat() * .5f - .05f;
+			rays[i * 6 + 5] = random.nextFloat() - .5f;
+		}
+
+		long best = Long.MAX_VALUE;
+		int hits = 0;
+		for (int run = 0; run < RUNS; run++) {
+			hits = 0;
+			start = System.nanoTime();
+			for (int i = 0; i < RAYS; i++) {
+				float t = caster.intersect(rays[i * 6], rays[i * 6 + 1], rays[i * 6 + 2], rays[i * 6 + 3],
+						rays[i * 6 + 4], rays[i * 6 + 5], Float.MAX_VALUE);
+				if (t >= 0) {
+					hits++;
+				}
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.printf("%d rays, %d hits: %.2f ms, %.0f rays/s%n", RAYS, hits, best / 1e6, RAYS / (best / 1e9));
+	}
+}
@@ -0,0 +1,188 @@
+package org.lwjglb.game.engine.terrain;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.joml.Vector3f;
+import org.lwjglb.game.engine.utils.SimplexNoise;
+
+/**
+ * Compares {@link TerrainMeshBuilder} against building the same terrain mesh
+ * through boxed {@code Float} and {@code Integer} lists, the way the height
+ * map used to, at several radii. Both start from the same heights, so only
+ * the mesh building is timed. Prints the best of a few runs and the largest
+ * difference between the two meshes.
+ */
+public class TerrainMeshBenchmark {
+
+	private static final int[] RADII = { 60, 256, 512 };
+
+	private static final int RUNS = 5;
+
+	private static final Color COLOR = new Color(235, 192, 149);
+
+	public static void main(String[] args) {
+		for (int radius : RADII) {
+			int size = radius * 2;
+			float step = 1f / (size - 1);
+			float[] heights = new float[size * size];
+			new SimplexNoise(128, .5, 2).fillNoise(heights, 0, 0, step, step, size, size);
+
+			long boxedTime = Long.MAX_VALUE;
+			long serialTime = Long.MAX_VALUE;
+			long parallelTime = Long.MAX_VALUE;
+			BoxedMesh boxed = null;
+			TerrainMeshBuilder builder = null;
+			for (int run = 0; run < RUNS; run++) {
+				long start = System.nanoTime();
+				boxed = buildBoxed(heights, size, step);
+				long middle = System.nanoTime();
+				TerrainMeshBuilder serial = new TerrainMeshBuilder(size, size);
+				serial.setParallelism(1);
+				serial.build(heights, -.5f, -.5f, step, step, COLOR, 1);
+				long end = System.nanoTime();
+				builder = new TerrainMeshBuilder(size, size);
+				builder.build(heights, -.5f, -.5f, step, step, COLOR, 1);
+				long parallelEnd = System.nanoTime();
+				boxedTime = Math.min(boxedTime, middle - start);
+				serialTime = Math.min(serialTime, end - middle);
+				parallelTime = Math.min(parallelTime, parallelEnd - end);
+			}
+
+			System.out.printf("radius %d: boxed %.1f ms, builder %.1f ms (%.1fx), parallel %.1f ms (%.1fx)%n", radius,
+					boxedTime / 1e6, serialTime / 1e6, (double) boxedTime / serialTime, parallelTime / 1e6,
+					(double) boxedTime / parallelTime);
+			System.out.printf("  max difference: positions %.2e, normals %.2e, indices %s%n",
+					maxDifference(boxed.positions, builder.getPositions()),
+					maxDifference(boxed.normals, builder.getNormals()),
+					Arrays.equals(boxed.indices, builder.getIndices()) ? "equal" : "differ");
+		}
+	}
+
+	private static float maxDifference(float[] a, float[] b) {
+		if (a.length != b.length) {
+			return Float.POSITIVE_INFINITY;
+		}
+		float max = 0;
+		for (int i = 0; i < a.length; i++) {
+			max = Math.max(max, Math.abs(a[i] - b[i]));
+		}
+		return max;
+	}
+
+	private static class BoxedMesh {
+
+		float[] positions;
+
+		float[] colors;
+
+		float[] normals;
+
+		int[] indices;
+	}
+
+	/**
+	 * The list based mesh building the height map used before
+	 * {@link TerrainMeshBuilder}.
+	 */
+	private static BoxedMesh buildBoxed(float[] heights, int size, float step) {
+		List<Float> positions = new ArrayList<>();
+		List<Integer> indices = new ArrayList<>();
+
+		for (int z = 0; z < size; z++) {
+			for (int x = 0; x < size; x++) {
+				float heightY = heights[z * size + x];
+				for (int i = 0; i < 2; i++) {
+					positions.add(-.5f + x * step);
+					positions.add(heightY);
+					positions.add(-.5f + z * step);
+				}
+			}
+		}
+		for (int z = 0; z < size - 1; z++) {
+			for (int x = 0; x < size - 1; x++) {
+				int leftTop = z * size + x;
+				int leftBottom = (z + 1) * size + x;
+				int rightBottom = (z + 1) * size + x + 1;
+				int rightTop = z * size + x + 1;
+
+				indices.add(2 * leftTop);
+				indices.add(2 * leftBottom);
+				indices.add(2 * rightTop);
+
+				indices.add(2 * rightTop + 1);
+				indices.add(2 * leftBottom + 1);
+				indices.add(2 * rightBottom + 1);
+			}
+		}
+
+		BoxedMesh mesh = new BoxedMesh();
+		mesh.positions = toArray(positions);
+		Random random = new Random(1);
+		mesh.colors = new float[positions.size()];
+		for (int i = 0; i < mesh.colors.length; i += 3) {
+			float brightness = (random.nextFloat() - 0.5f) * 0.5f;
+			mesh.colors[i] = COLOR.getRed() / 255f + brightness;
+			mesh.colors[i + 1] = COLOR.getGreen() / 255f + brightness;
+			mesh.colors[i + 2] = COLOR.getBlue() / 255f + brightness;
+		}
+		mesh.indices = indices.stream().mapToInt((i) -> i).toArray();
+		mesh.normals = calcNormals(mesh.positions, size, size);
+		return mesh;
+	}
+
+	private static float[] calcNormals(float[] posArr, int width, int height) {
+		Vector3f v0 = new Vector3f();
+		Vector3f v1 = new Vector3f();
+		Vector3f v2 = new Vector3f();
+		Vector3f v3 = new Vector3f();
+		Vector3f v4 = new Vector3f();
+		Vector3f v12 = new Vector3f();
+		Vector3f v23 = new Vector3f();
+		Vector3f v34 = new Vector3f();
+		Vector3f v41 = new Vector3f();
+		List<Float> normals = new ArrayList<>();
+		Vector3f normal = new Vector3f();
+		for (int row = 0; row < height; row++) {
+			for (int col = 0; col < width; col++) {
+				if (row > 0 && row < height - 1 && col > 0 && col < width - 1) {
+					int i0 = row * width * 3 + col * 3;
+					v0.set(posArr[2 * i0], posArr[2 * i0 + 1], posArr[2 * i0 + 2]);
+					int i1 = row * width * 3 + (col - 1) * 3;
+					v1.set(posArr[2 * i1], posArr[2 * i1 + 1], posArr[2 * i1 + 2]).sub(v0);
+					int i2 = (row + 1) * width * 3 + col * 3;
+					v2.set(posArr[2 * i2], posArr[2 * i2 + 1], posArr[2 * i2 + 2]).sub(v0);
+					int i3 = row * width * 3 + (col + 1) * 3;
+					v3.set(posArr[2 * i3], posArr[2 * i3 + 1], posArr[2 * i3 + 2]).sub(v0);
+					int i4 = (row - 1) * width * 3 + col * 3;
+					v4.set(posArr[2 * i4], posArr[2 * i4 + 1], posArr[2 * i4 + 2]).sub(v0);
+
+					v1.cross(v2, v12).normalize();
+					v2.cross(v3, v23).normalize();
+					v3.cross(v4, v34).normalize();
+					v4.cross(v1, v41).normalize();
+					normal.set(v12).add(v23).add(v34).add(v41).normalize();
+				} else {
+					normal.set(0, 1, 0);
+				}
+				for (int i = 0; i < 2; i++) {
+					normals.add(normal.x);
+					normals.add(normal.y);
+					normals.add(normal.z);
+				}
+			}
+		}
+		return toArray(normals);
+	}
+
+	private static float[] toArray(List<Float> list) {
+		float[] array = new float[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+}
@@ -0,0 +1,51 @@
+package org.lwjglb.game.engine.utils;
+
+/**
+ * Compares sampling a grid with {@link SimplexNoise#getNoise(double, double)}
+ * per point against {@link SimplexNoise#fillNoise}, at several grid sizes.
+ * Prints the best of a few runs and the largest difference between the two.
+ */
+public class NoiseBenchmark {
+
+	private static final int[] SIZES = { 256, 1024, 2048 };
+
+	private static final int RUNS = 5;
+
+	/**
+	 * Noise coordinates the grid spans, like the terrain does.
+	 */
+	private static final float EXTENT = 100;
+
+	public static void main(String[] args) {
+		SimplexNoise noise = new SimplexNoise(128, .5, 2);
+		for (int size : SIZES) {
+			float step = EXTENT / (size - 1);
+			float[] out = new float[size * size];
+			double checksum = 0;
+			long perPoint = Long.MAX_VALUE;
+			long filled = Long.MAX_VALUE;
+			for (int run = 0; run < RUNS; run++) {
+				long start = System.nanoTime();
+				for (int z = 0; z < size; z++) {
+					for (int x = 0; x < size; x++) {
+						checksum += noise.getNoise(x * step, z * step);
+					}
+				}
+				long middle = System.nanoTime();
+				noise.fillNoise(out, 0, 0, step, step, size, size);
+				long end = System.nanoTime();
+				perPoint = Math.min(perPoint, middle - start);
+				filled = Math.min(filled, end - middle);
+			}
+
+			double maxError = 0;
+			for (int z = 0; z < size; z++) {
+				for (int x = 0; x < size; x++) {
+					maxError = Math.max(maxError, Math.abs(out[z * size + x] - noise.getNoise(x * step, z * step)));
+				}
+			}
+			System.out.printf("%dx%d: getNoise %.1f ms, fillNoise %.1f ms, %.2fx, max error %.2e (%.0f)%n", size,
+					size, perPoint / 1e6, filled / 1e6, (double) perPoint / filled, maxError, checksum);
+		}
+	}
+}
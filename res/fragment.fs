@@ -30,11 +30,22 @@ struct DirectionalLight
 
 const int MAX_POINT_LIGHTS = 5;
 
-uniform vec3 ambientLight;
-uniform float specularPower;
+// shared by all scene shaders, see SceneBuffers
+layout (std140) uniform Frame
+{
+    mat4 projectionMatrix;
+    vec3 ambientLight;
+    float specularPower;
+};
+layout (std140) uniform Pass
+{
+    mat4 viewMatrix;
+    vec4 clipPlane;
+    PointLight pointLights[MAX_POINT_LIGHTS];
+    DirectionalLight directionalLight;
+};
+
 uniform float reflectance;
-uniform PointLight pointLights[MAX_POINT_LIGHTS];
-uniform DirectionalLight directionalLight;
 
 vec4 calcLightColour(vec3 light_colour, float light_intensity, vec3 position, vec3 to_light_dir, vec3 normal)
 {
@@ -30,11 +30,35 @@ struct DirectionalLight
 
 const int MAX_POINT_LIGHTS = 5;
 
-uniform vec3 ambientLight;
-uniform float specularPower;
+// shared by all scene shaders, see SceneBuffers
+layout (std140) uniform Frame
+{
+    mat4 projectionMatrix;
+    vec3 ambientLight;
+    float specularPower;
+};
+layout (std140) uniform Pass
+{
+    mat4 viewMatrix;
+    vec4 clipPlane;
+    PointLight pointLights[MAX_POINT_LIGHTS];
+    DirectionalLight directionalLight;
+};
+
 uniform float reflectance;
-uniform PointLight pointLights[MAX_POINT_LIGHTS];
-uniform DirectionalLight directionalLight;
+// per triangle brightness variation of meshes with shared vertices
+uniform int colorSeed;
+uniform float colorJitter;
+
+uint hash(uint x)
+{
+    x ^= x >> 16;
+    x *= 0x7feb352dU;
+    x ^= x >> 15;
+    x *= 0x846ca68bU;
+    x ^= x >> 16;
+    return x;
+}
 
 vec4 calcLightColour(vec3 light_colour, float light_intensity, vec3 position, vec3 to_light_dir, vec3 normal)
 {
@@ -77,7 +101,8 @@ vec4 calcDirectionalLight(DirectionalLight light, vec3 position, vec3 normal)
 
 void main()
 {
-    vec4 baseColour = vec4(exColor, 1);
+    float random = float(hash(uint(gl_PrimitiveID) ^ hash(uint(colorSeed))) >> 8) / 16777216.0;
+    vec4 baseColour = vec4(exColor + (random - 0.5) * colorJitter, 1);
 
     vec4 totalLight = vec4(ambientLight, 1.0);
     for (int i=0; i<MAX_POINT_LIGHTS; i++)
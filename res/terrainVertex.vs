@@ -4,11 +4,46 @@ layout (location=0) in vec3 pos;
 layout (location=1) in vec3 inColor;
 layout (location=2) in vec3 normal;
 
-// projection * view
-uniform mat4 projectionMatrix;
+struct Attenuation
+{
+    float constant;
+    float linear;
+    float exponent;
+};
+
+struct PointLight
+{
+    vec3 colour;
+    // Light position is assumed to be in view coordinates
+    vec3 position;
+    float intensity;
+    Attenuation att;
+};
+struct DirectionalLight
+{
+    vec3 colour;
+    vec3 direction;
+    float intensity;
+};
+
+const int MAX_POINT_LIGHTS = 5;
+
+// shared by all scene shaders, see SceneBuffers
+layout (std140) uniform Frame
+{
+    mat4 projectionMatrix;
+    vec3 ambientLight;
+    float specularPower;
+};
+layout (std140) uniform Pass
+{
+    mat4 viewMatrix;
+    vec4 clipPlane;
+    PointLight pointLights[MAX_POINT_LIGHTS];
+    DirectionalLight directionalLight;
+};
+
 uniform mat4 modelMatrix;
-uniform mat4 modelViewMatrix;
-uniform vec4 clipPlane;
 
 flat out vec3 exColor;
 out vec3 mvVertexNormal;
@@ -16,12 +51,14 @@ out vec3 mvVertexPos;
 
 void main()
 {
-	gl_ClipDistance[0] = dot(modelMatrix * vec4(pos, 1.0), clipPlane);
+	vec4 worldPos = modelMatrix * vec4(pos, 1.0);
+	gl_ClipDistance[0] = dot(worldPos, clipPlane);
 	
-	vec4 mvPos = modelViewMatrix * vec4(pos, 1.0);
+	mat4 modelViewMatrix = viewMatrix * modelMatrix;
+	vec4 mvPos = viewMatrix * worldPos;
 	
     gl_Position =  projectionMatrix * mvPos;
     mvVertexPos = mvPos.xyz;
     mvVertexNormal = normalize(modelViewMatrix * vec4(normal, 0.0)).xyz;
     exColor = inColor;
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -31,12 +31,22 @@ struct DirectionalLight
 
 const int MAX_POINT_LIGHTS = 5;
 
-uniform vec3 ambientLight;
-uniform float specularPower;
+// shared by all scene shaders, see SceneBuffers
+layout (std140) uniform Frame
+{
+    mat4 projectionMatrix;
+    vec3 ambientLight;
+    float specularPower;
+};
+layout (std140) uniform Pass
+{
+    mat4 viewMatrix;
+    vec4 clipPlane;
+    PointLight pointLights[MAX_POINT_LIGHTS];
+    DirectionalLight directionalLight;
+};
+
 uniform float reflectance;
-uniform PointLight pointLights[MAX_POINT_LIGHTS];
-uniform DirectionalLight directionalLight;
-uniform mat4 modelViewMatrix;
 uniform float zNear;
 uniform float zFar;
 uniform sampler2D refractTex;
@@ -121,4 +131,4 @@ void main()
     fragColor = baseColour * totalLight;
     fragColor.a = clamp(waterDepth*edgeSoftness, 0, 1);
 }
-	
\ No newline at end of file
+	
\ No newline at end of file
@@ -3,9 +3,46 @@
 layout (location=0) in vec3 pos;
 layout (location=1) in vec3 inColor;
 
-// projection * view
-uniform mat4 projectionMatrix;
-uniform mat4 modelViewMatrix;
+struct Attenuation
+{
+    float constant;
+    float linear;
+    float exponent;
+};
+
+struct PointLight
+{
+    vec3 colour;
+    // Light position is assumed to be in view coordinates
+    vec3 position;
+    float intensity;
+    Attenuation att;
+};
+struct DirectionalLight
+{
+    vec3 colour;
+    vec3 direction;
+    float intensity;
+};
+
+const int MAX_POINT_LIGHTS = 5;
+
+// shared by all scene shaders, see SceneBuffers
+layout (std140) uniform Frame
+{
+    mat4 projectionMatrix;
+    vec3 ambientLight;
+    float specularPower;
+};
+layout (std140) uniform Pass
+{
+    mat4 viewMatrix;
+    vec4 clipPlane;
+    PointLight pointLights[MAX_POINT_LIGHTS];
+    DirectionalLight directionalLight;
+};
+
+uniform mat4 modelMatrix;
 uniform float time;
 
 out vec3 exColor;
@@ -30,7 +67,7 @@ void main()
 {
 	vec3 newPos = generateWavePos();
 
-	vec4 mvPos = modelViewMatrix * vec4(newPos, 1.0);
+	vec4 mvPos = viewMatrix * modelMatrix * vec4(newPos, 1.0);
 	clipSpace = projectionMatrix * mvPos;
     gl_Position =  clipSpace;
     mvVertexPos = mvPos.xyz;
@@ -11,7 +11,7 @@ import java.util.Scanner;
  * @author Kazó Csaba
  */
 enum Type {
-	CHAR {
+	CHAR(1) {
 		@Override
 		public Number parse(Scanner scanner) throws IOException {
 			try {
@@ -24,12 +24,8 @@ enum Type {
 				throw new InvalidPlyFormatException("Unexpected end of file", e);
 			}
 		}
-		@Override
-		public Number read(ByteBuffer buffer) throws IOException {
-			return buffer.get();
-		}
 	},
-	UCHAR {
+	UCHAR(1) {
 		@Override
 		public Number parse(Scanner scanner) throws IOException {
 			try {
@@ -42,12 +38,8 @@ enum Type {
 				throw new InvalidPlyFormatException("Unexpected end of file", e);
 			}
 		}
-		@Override
-		public Number read(ByteBuffer buffer) throws IOException {
-			return buffer.get() & 0xFF;
-		}
 	},
-	SHORT {
+	SHORT(2) {
 		@Override
 		public Number parse(Scanner scanner) throws IOException {
 			try {
@@ -60,12 +52,8 @@ enum Type {
 				throw new InvalidPlyFormatException("Unexpected end of file", e);
 			}
 		}
-		@Override
-		public Number read(ByteBuffer buffer) throws IOException {
-			return buffer.getShort();
-		}
 	},
-	USHORT {
+	USHORT(2) {
 		@Override
 		public Number parse(Scanner scanner) throws IOException {
 			try {
@@ -78,13 +66,8 @@ enum Type {
 				throw new InvalidPlyFormatException("Unexpected end of file", e);
 			}
 		}
-
-		@Override
-		public Number read(ByteBuffer buffer) throws IOException {
-			return buffer.getShort() & 0xFFFF;
-		}
 	},
-	INT {
+	INT(4) {
 		@Override
 		public Number parse(Scanner scanner) throws IOException {
 			try {
@@ -95,13 +78,8 @@ enum Type {
 				throw new InvalidPlyFormatException("Unexpected end of file", e);
 			}
 		}
-
-		@Override
-		public Number read(ByteBuffer buffer) throws IOException {
-			return buffer.getInt();
-		}
 	},
-	UINT {
+	UINT(4) {
 		@Override
 		public Number parse(Scanner scanner) throws IOException {
 			try {
@@ -114,13 +92,8 @@ enum Type {
 				throw new InvalidPlyFormatException("Unexpected end of file", e);
 			}
 		}
-
-		@Override
-		public Number read(ByteBuffer buffer) throws IOException {
-			return buffer.getInt() & 0xFFFFFFFFL;
-		}
 	},
-	FLOAT {
+	FLOAT(4) {
 		@Override
 		public Number parse(Scanner scanner) throws IOException {
 			try {
@@ -131,13 +104,8 @@ enum Type {
 				throw new InvalidPlyFormatException("Unexpected end of file", e);
 			}
 		}
-
-		@Override
-		public Number read(ByteBuffer buffer) throws IOException {
-			return buffer.getFloat();
-		}
 	},
-	DOUBLE {
+	DOUBLE(8) {
 		@Override
 		public Number parse(Scanner scanner) throws IOException {
 			try {
@@ -149,12 +117,63 @@ enum Type {
 			}
 		}
 
-		@Override
-		public Number read(ByteBuffer buffer) throws IOException {
-			return buffer.getDouble();
-		}
-
 	};
+	/**
+	 * Size in bytes in a binary file.
+	 */
+	public final int size;
+
+	private Type(int size) {
+		this.size = size;
+	}
+
 	public abstract Number parse(Scanner scanner) throws IOException;
-	public abstract Number read(ByteBuffer buffer) throws IOException;
+
+	/**
+	 * Reads a value of this type at an absolute index without boxing.
+	 */
+	public double getDouble(ByteBuffer buffer, int index) {
+		switch (this) {
+		case CHAR:
+			return buffer.get(index);
+		case UCHAR:
+			return buffer.get(index) & 0xFF;
+		case SHORT:
+			return buffer.getShort(index);
+		case USHORT:
+			return buffer.getShort(index) & 0xFFFF;
+		case INT:
+			return buffer.getInt(index);
+		case UINT:
+			return buffer.getInt(index) & 0xFFFFFFFFL;
+		case FLOAT:
+			return buffer.getFloat(index);
+		default:
+			return buffer.getDouble(index);
+		}
+	}
+
+	/**
+	 * Reads a value of an integral type at an absolute index without boxing.
+	 */
+	public long getLong(ByteBuffer buffer, int index) {
+		switch (this) {
+		case CHAR:
+			return buffer.get(index);
+		case UCHAR:
+			return buffer.get(index) & 0xFF;
+		case SHORT:
+			return buffer.getShort(index);
+		case USHORT:
+			return buffer.getShort(index) & 0xFFFF;
+		case INT:
+			return buffer.getInt(index);
+		case UINT:
+			return buffer.getInt(index) & 0xFFFFFFFFL;
+		case FLOAT:
+			return (long) buffer.getFloat(index);
+		default:
+			return (long) buffer.getDouble(index);
+		}
+	}
 }
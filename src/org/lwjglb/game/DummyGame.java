@@ -1,11 +1,18 @@
 package org.lwjglb.game;
 
+import java.nio.file.Paths;
+
 import org.joml.Vector2f;
 import org.joml.Vector3f;
 import org.lwjgl.glfw.GLFW;
+import org.lwjglb.game.engine.Asset;
+import org.lwjglb.game.engine.AssetManager;
 import org.lwjglb.game.engine.Camera;
 import org.lwjglb.game.engine.IGameLogic;
+import org.lwjglb.game.engine.Mesh;
+import org.lwjglb.game.engine.MeshCache;
 import org.lwjglb.game.engine.MouseInput;
+import org.lwjglb.game.engine.VertexFormat;
 import org.lwjglb.game.engine.Window;
 import org.lwjglb.game.engine.lighting.DirectionalLight;
 import org.lwjglb.game.engine.lighting.PointLight;
@@ -17,6 +24,8 @@ import hu.kazocsaba.v3d.mesh.format.ply.PlyReader;
 public class DummyGame implements IGameLogic {
 	private static final float CAMERA_POS_STEP = 0.05f;
 	private static final float MOUSE_SENSITIVITY = 0.4f;
+	private static final float TORUS_HOVER = 0.2f;
+	private static final float TITLE_INTERVAL = 0.5f;
 	Camera camera = new Camera(new Vector3f(0, 3, 0), new Vector3f());
 	Vector3f cameraInc = new Vector3f();
 	Renderer renderer = new Renderer();
@@ -26,6 +35,11 @@ public class DummyGame implements IGameLogic {
 	private WaterModel waterMesh;
 	private float time;
 	private HeightMap heightmap;
+	private final AssetManager assets = new AssetManager(2);
+	private final Vector3f rayOrigin = new Vector3f();
+	private final Vector3f rayDir = new Vector3f();
+	private final Vector3f picked = new Vector3f();
+	private float titleTime;
 
 	@Override
 	public void init(Window window) throws Exception {
@@ -48,13 +62,31 @@ public class DummyGame implements IGameLogic {
 		// float[] colors = new float[] { 0.5f, 0.0f, 0.0f, 0.0f, 0.5f, 0.0f,
 		// 0.0f, 0.0f, 0.5f, 0.0f, 0.5f, 0.5f, };
 
-		GameModel torus = new GameModel(new PlyReader("/untitled.ply").readMesh(), 1);
+		// the torus and the terrain load in the background, the cube
+		// placeholder is drawn until the torus is uploaded
+		MeshCache meshCache = new MeshCache(Paths.get(System.getProperty("java.io.tmpdir"), "lwjglb-meshes"));
+		Asset<Mesh> torusMesh = assets.loadMesh("/untitled.ply",
+				() -> meshCache.load("/untitled.ply", VertexFormat.PACKED, () -> {
+					PlyReader reader = new PlyReader("/untitled.ply");
+					// the torus is closed and opaque, drawing it outside in saves fill
+					reader.setOptimizeOverdraw(true);
+					return reader.readMeshData();
+				}));
+		GameModel torus = new GameModel(torusMesh.get(), 1);
+		torusMesh.getFuture().thenAccept(torus::setMesh);
+		reportFailure(torusMesh);
 		torus.setScale(.1f);
 		torus.setPosition(0, 3f, 0);
-		heightmap = new HeightMap(-.1f, .15f, .5f, 60, 100);
-		heightmap.setScale(10);
 		models = new GameModel[] { torus };
 
+		Asset<HeightMap> terrain = assets.load("heightmap", () -> {
+			HeightMap heightmap = new HeightMap(-.1f, .15f, .5f, 60, 100);
+			heightmap.setScale(10);
+			return heightmap;
+		}, null);
+		terrain.getFuture().thenAccept(heightmap -> this.heightmap = heightmap);
+		reportFailure(terrain);
+
 		waterMesh = new WaterModel(80, 80, 0f);
 		waterMesh.setScale(15);
 
@@ -62,6 +94,19 @@ public class DummyGame implements IGameLogic {
 				new PointLight(new Vector3f(1, 1, 1), new Vector3f(0, 3f, 0), 2, new Attenuation(1, 1, 1)) };
 	}
 
+	/**
+	 * Logs the error of an asset that failed to load. The game goes on with
+	 * the placeholder, or without the asset.
+	 */
+	private static void reportFailure(Asset<?> asset) {
+		asset.getFuture().whenComplete((value, error) -> {
+			if (error != null) {
+				System.err.println("Failed to load " + asset.getName());
+				error.printStackTrace();
+			}
+		});
+	}
+
 	@Override
 	public void input(Window window, MouseInput mouseInput) {
 		cameraInc.set(0, 0, 0);
@@ -89,6 +134,14 @@ public class DummyGame implements IGameLogic {
 			Vector2f rotVec = mouseInput.getDisplVec();
 			camera.moveRotation(rotVec.x * MOUSE_SENSITIVITY, rotVec.y * MOUSE_SENSITIVITY, 0);
 		}
+
+		// drag the torus over the terrain picked under the cursor
+		if (mouseInput.isLeftButtonPressed() && mouseInput.isInWindow() && heightmap != null) {
+			renderer.getCursorRay(window, camera, mouseInput, rayOrigin, rayDir);
+			if (heightmap.pick(rayOrigin, rayDir, picked)) {
+				models[0].setPosition(picked.x, picked.y + TORUS_HOVER, picked.z);
+			}
+		}
 	}
 
 	@Override
@@ -99,14 +152,24 @@ public class DummyGame implements IGameLogic {
 
 	@Override
 	public void render(Window window) {
+		assets.update();
 		renderer.render(window, time, waterMesh, heightmap, models, lights, camera, directionalLight);
+
+		// show the culling statistics, not every frame to spare the strings
+		if (time - titleTime >= TITLE_INTERVAL) {
+			titleTime = time;
+			window.setDisplayedTitle(String.format("%s - %d drawn, %d culled", window.getTitle(),
+					renderer.getVisibleCount(), renderer.getCulledCount()));
+		}
 	}
 
 	@Override
 	public void cleanup() {
 		renderer.cleanup();
-		for (int i = 0; i < models.length; i++) {
-			models[i].getMesh().cleanup();
+		// the model meshes belong to the asset manager
+		assets.cleanup();
+		if (heightmap != null) {
+			heightmap.cleanup();
 		}
 	}
 
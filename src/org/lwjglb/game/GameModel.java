@@ -1,11 +1,13 @@
 package org.lwjglb.game;
 
+import org.joml.Matrix4f;
 import org.joml.Vector3f;
+import org.lwjglb.game.engine.FrustumCuller;
 import org.lwjglb.game.engine.Mesh;
 
 public class GameModel {
 
-    private final Mesh mesh;
+    private Mesh mesh;
 
     private final Vector3f position;
 
@@ -15,6 +17,21 @@ public class GameModel {
     
     private final float reflectance;
 
+    private final Vector3f worldMin = new Vector3f();
+
+    private final Vector3f worldMax = new Vector3f();
+
+    private final Matrix4f modelMatrix = new Matrix4f();
+
+    // the transformation the model matrix and world bounds were last computed for
+    private final Vector3f cachedPosition = new Vector3f(Float.NaN);
+
+    private final Vector3f cachedRotation = new Vector3f(Float.NaN);
+
+    private float cachedScale = Float.NaN;
+
+    private final int[] cullingPlanes = FrustumCuller.createCullingPlanes();
+
     public GameModel(Mesh mesh, float reflectance) {
         this.mesh = mesh;
         position = new Vector3f(0, 0, 0);
@@ -55,7 +72,63 @@ public class GameModel {
         return mesh;
     }
 
+    /**
+     * Replaces the mesh, for example a placeholder by the loaded one.
+     */
+    public void setMesh(Mesh mesh) {
+        this.mesh = mesh;
+        // the world bounds depend on the mesh
+        cachedScale = Float.NaN;
+    }
+
 	public float getReflectance() {
 		return reflectance;
 	}
+
+    /**
+     * @return the transformation from model to world space. It is only
+     *         recomputed when the position, rotation or scale changed.
+     */
+    public Matrix4f getModelMatrix() {
+        updateTransform();
+        return modelMatrix;
+    }
+
+    /**
+     * @return the minimum corner of the world space bounding box
+     */
+    public Vector3f getWorldMin() {
+        updateTransform();
+        return worldMin;
+    }
+
+    /**
+     * @return the maximum corner of the world space bounding box
+     */
+    public Vector3f getWorldMax() {
+        updateTransform();
+        return worldMax;
+    }
+
+    /**
+     * @return the last planes that culled this model, per culler
+     */
+    public int[] getCullingPlanes() {
+        return cullingPlanes;
+    }
+
+    private void updateTransform() {
+        if (position.equals(cachedPosition) && rotation.equals(cachedRotation) && scale == cachedScale) {
+            return;
+        }
+        cachedPosition.set(position);
+        cachedRotation.set(rotation);
+        cachedScale = scale;
+        modelMatrix.identity().translate(position).rotateX((float) Math.toRadians(rotation.x))
+                .rotateY((float) Math.toRadians(rotation.y)).rotateZ((float) Math.toRadians(rotation.z))
+                .scale(scale);
+        if (mesh != null) {
+            modelMatrix.transformAab(mesh.getMin(), mesh.getMax(), worldMin, worldMax);
+        }
+    }
 }
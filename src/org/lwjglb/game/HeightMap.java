@@ -1,174 +1,206 @@
 package org.lwjglb.game;
 
 import java.awt.Color;
-import java.util.ArrayList;
-import java.util.List;
 
-import org.joml.Vector2f;
 import org.joml.Vector3f;
-import org.lwjglb.game.engine.Mesh;
-import org.lwjglb.game.engine.utils.SimplexNoise;
+
+import org.lwjglb.game.engine.noise.EdgeFalloff;
+import org.lwjglb.game.engine.noise.NoiseEvaluator;
+import org.lwjglb.game.engine.noise.NoiseNode;
+import org.lwjglb.game.engine.noise.Remap;
+import org.lwjglb.game.engine.noise.SeededSimplexSource;
+import org.lwjglb.game.engine.noise.SourceNode;
+import org.lwjglb.game.engine.terrain.HeightfieldRayCaster;
+import org.lwjglb.game.engine.terrain.TerrainGrid;
+import org.lwjglb.game.engine.terrain.TerrainQuadTree;
 import org.lwjglb.game.engine.utils.Utils;
 
+/**
+ * The island terrain. Its heights are kept in a {@link TerrainGrid} and drawn
+ * through a {@link TerrainQuadTree} of chunks instead of a single mesh, so
+ * {@link #getMesh()} returns {@code null}. The heights of the whole grid are
+ * generated by the constructor; only the chunk meshes are streamed.
+ * <p>
+ * The height, normal and ray queries take world coordinates and account for
+ * the position and scale of the model, but not for a rotation. They allocate
+ * nothing and may be called from any thread.
+ */
 public class HeightMap extends GameModel {
 
 	private static final float START_X = -0.5f;
 	private static final float START_Z = -0.5f;
 	private static final float REFLECTANCE = .1f;
+	private static final Color COLOR = new Color(235, 192, 149);
+	private static final int CHUNK_CELLS = 32;
+	private static final long CHUNK_MEMORY_BUDGET = 64 * 1024 * 1024;
+	private static final int DEFAULT_SEED = 2;
+
+	private final TerrainGrid grid;
+
+	private final HeightfieldRayCaster rayCaster;
+
+	private final TerrainQuadTree terrain;
 
 	public HeightMap(float minY, float maxY, float persistence, int radius, float spikeness) {
-		super(createMesh(minY, maxY, persistence, radius, spikeness), REFLECTANCE);
+		this(minY, maxY, persistence, radius, spikeness, Runtime.getRuntime().availableProcessors());
 	}
 
-	protected static Mesh createMesh(final float minY, final float maxY, final float persistence, final int radius,
-			float spikeness) {
-		SimplexNoise noise = new SimplexNoise(128, persistence, 2);// Utils.getRandom().nextInt());
-
-		float xStep = Math.abs(START_X * 2) / (radius * 2 - 1);
-		float zStep = Math.abs(START_Z * 2) / (radius * 2 - 1);
-
-		List<Float> positions = new ArrayList<>();
-		List<Integer> indices = new ArrayList<>();
-
-		for (int z = 0; z < radius * 2; z++) {
-			for (int x = 0; x < radius * 2; x++) {
-				// scale from [-1, 1] to [minY, maxY]
-				float heightY = (float) ((noise.getNoise(x * xStep * spikeness, z * zStep * spikeness) + 1f) / 2
-						* (maxY - minY) + minY);
-				heightY = createCircle(heightY, ((float) x / radius) - 1, ((float) z / radius) - 1);
-
-				positions.add(START_X + x * xStep);
-				positions.add(heightY);
-				positions.add(START_Z + z * zStep);
-				positions.add(START_X + x * xStep);
-				positions.add(heightY);
-				positions.add(START_Z + z * zStep);
-			}
-		}
-		for (int z = 0; z < radius * 2 - 1; z++) {
-			for (int x = 0; x < radius * 2 - 1; x++) {
-				int leftTop = z * radius * 2 + x;
-				int leftBottom = (z + 1) * radius * 2 + x;
-				int rightBottom = (z + 1) * radius * 2 + x + 1;
-				int rightTop = z * radius * 2 + x + 1;
-
-				indices.add(2 * leftTop);
-				indices.add(2 * leftBottom);
-				indices.add(2 * rightTop);
-
-				indices.add(2 * rightTop + 1);
-				indices.add(2 * leftBottom + 1);
-				indices.add(2 * rightBottom + 1);
-			}
-		}
+	/**
+	 * @param parallelism
+	 *            maximum number of threads used to generate the terrain
+	 */
+	public HeightMap(float minY, float maxY, float persistence, int radius, float spikeness, int parallelism) {
+		this(minY, maxY, persistence, radius, spikeness, DEFAULT_SEED, parallelism);
+	}
 
-		float[] verticesArr = Utils.listToArray(positions);
-		Color c = new Color(235, 192, 149);
-		float[] colorArr = new float[positions.size()];
-		for (int i = 0; i < colorArr.length; i += 3) {
-			float brightness = (Utils.getRandom().nextFloat() - 0.5f) * 0.5f;
-			colorArr[i] = (float) c.getRed() / 255f + brightness;
-			colorArr[i + 1] = (float) c.getGreen() / 255f + brightness;
-			colorArr[i + 2] = (float) c.getBlue() / 255f + brightness;
-		}
-		int[] indicesArr = indices.stream().mapToInt((i) -> i).toArray();
+	/**
+	 * @param seed
+	 *            seed of the noise, the same seed gives the same terrain
+	 * @param parallelism
+	 *            maximum number of threads used to generate the terrain
+	 */
+	public HeightMap(float minY, float maxY, float persistence, int radius, float spikeness, int seed,
+			int parallelism) {
+		this(createShape(minY, maxY, persistence, radius, spikeness, seed), radius, spikeness, parallelism);
+	}
+
+	/**
+	 * @param shape
+	 *            noise graph giving the height at each point. The grid spans
+	 *            [0, spikeness] in noise coordinates on both axes.
+	 * @param parallelism
+	 *            maximum number of threads used to generate the terrain
+	 */
+	public HeightMap(NoiseNode shape, int radius, float spikeness, int parallelism) {
+		super(null, REFLECTANCE);
+		grid = createGrid(shape, radius, spikeness, parallelism);
+		rayCaster = new HeightfieldRayCaster(grid);
+		terrain = new TerrainQuadTree(grid, CHUNK_CELLS, CHUNK_MEMORY_BUDGET, COLOR, Utils.getRandom().nextLong());
+	}
+
+	/**
+	 * The island: seeded simplex noise scaled to [minY, maxY] and lowered
+	 * towards the edge of the grid.
+	 */
+	public static NoiseNode createShape(float minY, float maxY, float persistence, int radius, float spikeness,
+			int seed) {
+		NoiseNode heights = new Remap(new SourceNode(new SeededSimplexSource(128, persistence, seed)), minY, maxY);
+		// the center and radius of the grid in noise coordinates
+		float center = radius * spikeness / (radius * 2 - 1);
+		return new EdgeFalloff(heights, center, center, center);
+	}
+
+	protected static TerrainGrid createGrid(NoiseNode shape, int radius, float spikeness, int parallelism) {
+		int size = radius * 2;
+		float xStep = Math.abs(START_X * 2) / (size - 1);
+		float zStep = Math.abs(START_Z * 2) / (size - 1);
+
+		float noiseXStep = xStep * spikeness;
+		float noiseZStep = zStep * spikeness;
 
-		float[] normalArr = calcNormals(verticesArr, radius * 2, radius * 2);
+		return TerrainGrid.sampleRows(size, size, (fromZ, toZ, width, heights) -> {
+			// every band has its own evaluator, they are not thread safe
+			NoiseEvaluator evaluator = new NoiseEvaluator(shape, (toZ - fromZ) * width);
+			evaluator.fill(heights, fromZ * width, 0, fromZ * noiseZStep, noiseXStep, noiseZStep, width, toZ - fromZ);
+		}, parallelism, START_X, START_Z, xStep, zStep);
+	}
 
-		return new Mesh(verticesArr, colorArr, normalArr, indicesArr);
+	/**
+	 * @return the bilinearly interpolated height of the terrain at a world
+	 *         position, the border height outside the terrain
+	 */
+	public float getHeight(float x, float z) {
+		Vector3f position = getPosition();
+		float scale = getScale();
+		return position.y + scale * grid.interpolateHeight((x - position.x) / scale, (z - position.z) / scale);
 	}
 
 	/**
-	 * Attenuates heights as they approach the edge
-	 * 
-	 * @param heightY
-	 * @param x
-	 *            [-1, 1]
-	 * @param z
-	 *            [-1, 1]
-	 * @return
+	 * Looks up the heights of {@code count} world positions.
+	 *
+	 * @param out
+	 *            receives the heights, as {@link #getHeight(float, float)}
 	 */
-	private static float createCircle(float heightY, float x, float z) {
-		float dist = new Vector2f(x, z).length();
-		float attenuationDistance = 0.65f;
-		if (dist > attenuationDistance) {
-			heightY -= (dist - attenuationDistance) * (.45f * dist);
+	public void getHeights(float[] x, float[] z, float[] out, int count) {
+		Vector3f position = getPosition();
+		float positionX = position.x;
+		float positionY = position.y;
+		float positionZ = position.z;
+		float scale = getScale();
+		float inverseScale = 1 / scale;
+		for (int i = 0; i < count; i++) {
+			out[i] = positionY
+					+ scale * grid.interpolateHeight((x[i] - positionX) * inverseScale, (z[i] - positionZ) * inverseScale);
 		}
-		return heightY;
 	}
 
-	private static float[] calcNormals(float[] posArr, int width, int height) {
-		Vector3f v0 = new Vector3f();
-		Vector3f v1 = new Vector3f();
-		Vector3f v2 = new Vector3f();
-		Vector3f v3 = new Vector3f();
-		Vector3f v4 = new Vector3f();
-		Vector3f v12 = new Vector3f();
-		Vector3f v23 = new Vector3f();
-		Vector3f v34 = new Vector3f();
-		Vector3f v41 = new Vector3f();
-		List<Float> normals = new ArrayList<>();
-		Vector3f normal = new Vector3f();
-		for (int row = 0; row < height; row++) {
-			for (int col = 0; col < width; col++) {
-				if (row > 0 && row < height - 1 && col > 0 && col < width - 1) {
-					int i0 = row * width * 3 + col * 3;
-					v0.x = posArr[2 * i0];
-					v0.y = posArr[2 * i0 + 1];
-					v0.z = posArr[2 * i0 + 2];
-
-					int i1 = row * width * 3 + (col - 1) * 3;
-					v1.x = posArr[2 * (i1)];
-					v1.y = posArr[2 * i1 + 1];
-					v1.z = posArr[2 * i1 + 2];
-					v1 = v1.sub(v0);
-
-					int i2 = (row + 1) * width * 3 + col * 3;
-					v2.x = posArr[2 * (i2)];
-					v2.y = posArr[2 * i2 + 1];
-					v2.z = posArr[2 * i2 + 2];
-					v2 = v2.sub(v0);
-
-					int i3 = (row) * width * 3 + (col + 1) * 3;
-					v3.x = posArr[2 * i3];
-					v3.y = posArr[2 * i3 + 1];
-					v3.z = posArr[2 * i3 + 2];
-					v3 = v3.sub(v0);
-
-					int i4 = (row - 1) * width * 3 + col * 3;
-					v4.x = posArr[2 * i4];
-					v4.y = posArr[2 * i4 + 1];
-					v4.z = posArr[2 * i4 + 2];
-					v4 = v4.sub(v0);
-
-					v1.cross(v2, v12);
-					v12.normalize();
-
-					v2.cross(v3, v23);
-					v23.normalize();
-
-					v3.cross(v4, v34);
-					v34.normalize();
-
-					v4.cross(v1, v41);
-					v41.normalize();
-
-					normal = v12.add(v23).add(v34).add(v41);
-					normal.normalize();
-				} else {
-					normal.x = 0;
-					normal.y = 1;
-					normal.z = 0;
-				}
-				normal.normalize();
-				for (int i = 0; i < 2; i++) {
-					normals.add(normal.x);
-					normals.add(normal.y);
-					normals.add(normal.z);
-				}
-			}
+	/**
+	 * @return {@code dest}, the unit normal of the terrain at a world
+	 *         position
+	 */
+	public Vector3f getNormal(float x, float z, Vector3f dest) {
+		Vector3f position = getPosition();
+		float scale = getScale();
+		// scaling x, y and z alike keeps the slopes
+		return grid.interpolateNormal((x - position.x) / scale, (z - position.z) / scale, dest);
+	}
+
+	/**
+	 * Casts a ray against the terrain.
+	 *
+	 * @param maxDistance
+	 *            how far along the ray to look, in multiples of {@code dir}
+	 * @return {@code t} of the first point {@code origin + t * dir} on the
+	 *         terrain, or -1 if there is none within {@code maxDistance}
+	 */
+	public float intersectRay(Vector3f origin, Vector3f dir, float maxDistance) {
+		Vector3f position = getPosition();
+		float inverseScale = 1 / getScale();
+		return rayCaster.intersect((origin.x - position.x) * inverseScale, (origin.y - position.y) * inverseScale,
+				(origin.z - position.z) * inverseScale, dir.x * inverseScale, dir.y * inverseScale,
+				dir.z * inverseScale, maxDistance);
+	}
+
+	/**
+	 * Finds the point of the terrain a ray hits first, for example a picking
+	 * ray through the cursor.
+	 *
+	 * @param hit
+	 *            receives the point hit, if any
+	 * @return whether the ray hits the terrain
+	 */
+	public boolean pick(Vector3f origin, Vector3f dir, Vector3f hit) {
+		float t = intersectRay(origin, dir, Float.POSITIVE_INFINITY);
+		if (t < 0) {
+			return false;
 		}
-		return Utils.listToArray(normals);
+		hit.set(origin.x + dir.x * t, origin.y + dir.y * t, origin.z + dir.z * t);
+		return true;
+	}
+
+	/**
+	 * @return whether the terrain does not block the line between two points.
+	 *         Points on the ground should be raised a little, as the terrain
+	 *         under them would block the line.
+	 */
+	public boolean isVisible(Vector3f from, Vector3f to) {
+		Vector3f position = getPosition();
+		float inverseScale = 1 / getScale();
+		return rayCaster.intersect((from.x - position.x) * inverseScale, (from.y - position.y) * inverseScale,
+				(from.z - position.z) * inverseScale, (to.x - from.x) * inverseScale, (to.y - from.y) * inverseScale,
+				(to.z - from.z) * inverseScale, 1) < 0;
+	}
+
+	public TerrainGrid getGrid() {
+		return grid;
+	}
+
+	public TerrainQuadTree getTerrain() {
+		return terrain;
+	}
+
+	public void cleanup() {
+		terrain.cleanup();
 	}
 
 }
@@ -0,0 +1,19 @@
+package org.lwjglb.game;
+
+import org.lwjglb.game.engine.ShaderProgram;
+
+/**
+ * The per model uniform locations the renderer sets on every scene shader,
+ * resolved once after the uniforms are created. Everything shared between
+ * models comes from the {@link org.lwjglb.game.engine.SceneBuffers}.
+ */
+class ModelUniforms {
+
+	final int modelMatrix;
+	final int reflectance;
+
+	ModelUniforms(ShaderProgram shader) {
+		modelMatrix = shader.getUniform("modelMatrix");
+		reflectance = shader.getUniform("reflectance");
+	}
+}
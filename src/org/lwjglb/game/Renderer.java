@@ -1,18 +1,24 @@
 package org.lwjglb.game;
 
+import org.joml.FrustumRayBuilder;
 import org.joml.Matrix4f;
+import org.joml.Vector2d;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL13;
 import org.lwjgl.opengl.GL30;
 import org.lwjglb.game.engine.Camera;
+import org.lwjglb.game.engine.FrustumCuller;
+import org.lwjglb.game.engine.MouseInput;
+import org.lwjglb.game.engine.SceneBuffers;
 import org.lwjglb.game.engine.ShaderProgram;
 import org.lwjglb.game.engine.TerrainShader;
 import org.lwjglb.game.engine.Transformation;
 import org.lwjglb.game.engine.Window;
 import org.lwjglb.game.engine.lighting.DirectionalLight;
 import org.lwjglb.game.engine.lighting.PointLight;
+import org.lwjglb.game.engine.lighting.ViewSpaceLights;
 import org.lwjglb.game.engine.water.WaterFrameBuffers;
 import org.lwjglb.game.engine.water.WaterModel;
 import org.lwjglb.game.engine.water.WaterShader;
@@ -35,31 +41,82 @@ public class Renderer {
 
 	private static final float WATER_REFLECTANCE = .9f;
 
+	private static final int REFRACTION_PASS = 0;
+
+	private static final int REFLECTION_PASS = 1;
+
+	private static final int MAIN_PASS = 2;
+
+	private static final int PASS_COUNT = 3;
+
 	private Transformation transformation = new Transformation();
 
 	ShaderProgram shader;
 
-	ShaderProgram terrainShader;
+	TerrainShader terrainShader;
 
 	WaterShader waterShader;
 
 	WaterFrameBuffers fbos;
 
+	private SceneBuffers sceneBuffers;
+
+	private ModelUniforms shaderUniforms;
+
+	private ModelUniforms terrainUniforms;
+
+	private ModelUniforms waterUniforms;
+
+	private int waterZNear;
+
+	private int waterZFar;
+
+	private int waterRefractTex;
+
+	private int waterReflectTex;
+
+	private int waterDepthTex;
+
+	private int waterTime;
+
+	private final FrustumCuller[] cullers = { new FrustumCuller(REFRACTION_PASS),
+			new FrustumCuller(REFLECTION_PASS), new FrustumCuller(MAIN_PASS) };
+
+	private final Camera reflectionCamera = new Camera();
+
+	private final Vector4f refractionClipPlane = new Vector4f();
+
+	private final Vector4f reflectionClipPlane = new Vector4f();
+
+	private final ViewSpaceLights lights = new ViewSpaceLights(MAX_POINT_LIGHTS);
+
+	private final FrustumRayBuilder rayBuilder = new FrustumRayBuilder();
+
+	private int visibleCount;
+
+	private int culledCount;
+
 	public void init(Window window) {
 		try {
 			shader = new ShaderProgram("/vertex.vs", "/fragment.fs");
-			shader.createUniform("projectionMatrix");
-			shader.createUniform("modelViewMatrix");
 			shader.createUniform("modelMatrix");
-			shader.createUniform("ambientLight");
-			shader.createUniform("specularPower");
 			shader.createUniform("reflectance");
-			shader.createPointLightListUniform("pointLights", MAX_POINT_LIGHTS);
-			shader.createDirectionalLightUniform("directionalLight");
-			shader.createUniform("clipPlane");
+			SceneBuffers.bindBlocks(shader);
 
-			terrainShader = new TerrainShader(MAX_POINT_LIGHTS);
-			waterShader = new WaterShader(MAX_POINT_LIGHTS);
+			terrainShader = new TerrainShader();
+			waterShader = new WaterShader();
+
+			sceneBuffers = new SceneBuffers(MAX_POINT_LIGHTS, PASS_COUNT);
+
+			shaderUniforms = new ModelUniforms(shader);
+			terrainUniforms = new ModelUniforms(terrainShader);
+			waterUniforms = new ModelUniforms(waterShader);
+			waterZNear = waterShader.getUniform("zNear");
+			waterZFar = waterShader.getUniform("zFar");
+			waterRefractTex = waterShader.getUniform("refractTex");
+			waterReflectTex = waterShader.getUniform("reflectTex");
+			waterDepthTex = waterShader.getUniform("depthTex");
+			waterTime = waterShader.getUniform("time");
 
 			fbos = new WaterFrameBuffers(window);
 
@@ -69,6 +126,25 @@ public class Renderer {
 
 	}
 
+	/**
+	 * Builds the ray from the camera through the cursor, for picking with the
+	 * projection the scene is rendered with.
+	 *
+	 * @param origin
+	 *            receives the position of the camera
+	 * @param dir
+	 *            receives the normalized direction through the cursor
+	 */
+	public void getCursorRay(Window window, Camera camera, MouseInput mouseInput, Vector3f origin, Vector3f dir) {
+		Matrix4f projectionMatrix = transformation.getProjectionMatrix(FOV, window.getWidth(), window.getHeight(),
+				Z_NEAR, Z_FAR);
+		rayBuilder.set(transformation.getViewProjectionMatrix(projectionMatrix, transformation.getViewMatrix(camera)));
+		rayBuilder.origin(origin);
+		// the cursor is measured from the top left, the rays from the bottom left
+		Vector2d cursor = mouseInput.getCurrentPos();
+		rayBuilder.dir((float) (cursor.x / window.getWidth()), 1 - (float) (cursor.y / window.getHeight()), dir);
+	}
+
 	public void render(Window window, float time, WaterModel water, HeightMap heightmap, GameModel[] models,
 			PointLight[] pointLights, Camera camera, DirectionalLight directionalLight) {
 		if (window.isResized()) {
@@ -85,6 +161,14 @@ public class Renderer {
 		Matrix4f projectionMatrix = transformation.getProjectionMatrix(FOV, window.getWidth(), window.getHeight(),
 				Z_NEAR, Z_FAR);
 
+		if (heightmap != null) {
+			heightmap.getTerrain().update(camera.getPosition(), transformation.getModelMatrix(heightmap), FOV,
+					window.getHeight());
+		}
+
+		sceneBuffers.updateFrame(projectionMatrix, AMBIENT_LIGHT, SPECULAR_POWER);
+		lights.set(pointLights, directionalLight);
+
 		fbos.bindRefractionFrameBuffer();
 		{
 			GL11.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
@@ -93,8 +177,8 @@ public class Renderer {
 
 			// render game models
 			float maxWaterHeight = water.getHeight() + WaterShader.MAX_HEIGHT_DIF * water.getScale();
-			renderModels(models,heightmap, pointLights, camera, directionalLight, projectionMatrix,
-					new Vector4f(0, -1, 0, maxWaterHeight));
+			refractionClipPlane.set(0, -1, 0, maxWaterHeight);
+			renderModels(models, heightmap, camera, projectionMatrix, refractionClipPlane, REFRACTION_PASS);
 
 		}
 		fbos.bindReflectionFrameBuffer();
@@ -105,20 +189,21 @@ public class Renderer {
 
 			float dist = 2 * (camera.getPosition().y - water.getHeight());
 
-			Camera reflectionCamera = new Camera(new Vector3f(camera.getPosition()),
-					new Vector3f(camera.getRotation()));
-			reflectionCamera.movePosition(0, -dist, 0);
-			reflectionCamera.getRotation().x = -reflectionCamera.getRotation().x;
+			Vector3f position = camera.getPosition();
+			Vector3f rotation = camera.getRotation();
+			reflectionCamera.setPosition(position.x, position.y - dist, position.z);
+			reflectionCamera.setRotation(-rotation.x, rotation.y, rotation.z);
 
 			// render game models
 			float minWaterHeight = water.getHeight() - WaterShader.MAX_HEIGHT_DIF * water.getScale();
-			renderModels(models,heightmap, pointLights, reflectionCamera, directionalLight, projectionMatrix,
-					new Vector4f(0, 1, 0, -minWaterHeight));
+			reflectionClipPlane.set(0, 1, 0, -minWaterHeight);
+			renderModels(models, heightmap, reflectionCamera, projectionMatrix, reflectionClipPlane,
+					REFLECTION_PASS);
 		}
 		fbos.unbindCurrentFrameBuffer();
 
 		// render game models
-		renderModels(models,heightmap, pointLights, camera, directionalLight, projectionMatrix, NO_CLIP);
+		renderModels(models, heightmap, camera, projectionMatrix, NO_CLIP, MAIN_PASS);
 
 		GL11.glEnable(GL11.GL_TEXTURE_2D);
 		GL13.glActiveTexture(GL13.GL_TEXTURE0);
@@ -131,101 +216,76 @@ public class Renderer {
 		GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
 		// render water
 		waterShader.bind();
-		waterShader.setUniform("zNear", Z_NEAR);
-		waterShader.setUniform("zFar", Z_FAR);
-		waterShader.setUniform("refractTex", 0);
-		waterShader.setUniform("reflectTex", 1);
-		waterShader.setUniform("depthTex", 2);
-		waterShader.setUniform("projectionMatrix", projectionMatrix);
-		waterShader.setUniform("modelViewMatrix",
-				transformation.getModelViewMatrix(water, transformation.getViewMatrix(camera)));
-		waterShader.setUniform("reflectance", WATER_REFLECTANCE);
-		waterShader.setUniform("time", time);
-		renderLights(waterShader, camera, pointLights, directionalLight);
-		water.getMesh().render();
+		waterShader.setUniform(waterZNear, Z_NEAR);
+		waterShader.setUniform(waterZFar, Z_FAR);
+		waterShader.setUniform(waterRefractTex, 0);
+		waterShader.setUniform(waterReflectTex, 1);
+		waterShader.setUniform(waterDepthTex, 2);
+		waterShader.setUniform(waterUniforms.modelMatrix, transformation.getModelMatrix(water));
+		waterShader.setUniform(waterUniforms.reflectance, WATER_REFLECTANCE);
+		waterShader.setUniform(waterTime, time);
+		if (cullers[MAIN_PASS].isVisible(water)) {
+			water.getMesh().render();
+		}
 		GL11.glDisable(GL11.GL_BLEND);
 		waterShader.unbind();
 
+		visibleCount = 0;
+		culledCount = 0;
+		for (FrustumCuller culler : cullers) {
+			visibleCount += culler.getVisibleCount();
+			culledCount += culler.getCulledCount();
+		}
+
 	}
 
-	private void renderModels(GameModel[] models, HeightMap heightmap, PointLight[] pointLights, Camera camera,
-			DirectionalLight directionalLight, Matrix4f projectionMatrix, Vector4f clipPlane) {
+	private void renderModels(GameModel[] models, HeightMap heightmap, Camera camera, Matrix4f projectionMatrix,
+			Vector4f clipPlane, int pass) {
+		Matrix4f viewMatrix = transformation.getViewMatrix(camera);
+		FrustumCuller culler = cullers[pass];
+		culler.update(transformation.getViewProjectionMatrix(projectionMatrix, viewMatrix), clipPlane);
+		lights.transform(viewMatrix);
+		sceneBuffers.updatePass(pass, viewMatrix, clipPlane, lights);
+		sceneBuffers.bindPass(pass);
+
 		shader.bind();
-		shader.setUniform("projectionMatrix", projectionMatrix);
-		renderLights(shader, camera, pointLights, directionalLight);
-		shader.setUniform("clipPlane", clipPlane);
 		for (int i = 0; i < models.length; i++) {
-			shader.setUniform("reflectance", models[i].getReflectance());
-			shader.setUniform("modelMatrix", transformation.getModelMatrix(models[i]));
-			shader.setUniform("modelViewMatrix",
-					transformation.getModelViewMatrix(models[i], transformation.getViewMatrix(camera)));
+			if (!culler.isVisible(models[i])) {
+				continue;
+			}
+			shader.setUniform(shaderUniforms.reflectance, models[i].getReflectance());
+			shader.setUniform(shaderUniforms.modelMatrix, transformation.getModelMatrix(models[i]));
 			models[i].getMesh().render();
 		}
 		shader.unbind();
 
+		if (heightmap == null) {
+			// still loading
+			return;
+		}
+
 		// draw terrain
 		terrainShader.bind();
-		terrainShader.setUniform("projectionMatrix", projectionMatrix);
-		renderLights(terrainShader, camera, pointLights, directionalLight);
-		terrainShader.setUniform("clipPlane", clipPlane);
-		terrainShader.setUniform("reflectance", heightmap.getReflectance());
-		terrainShader.setUniform("modelMatrix", transformation.getModelMatrix(heightmap));
-		terrainShader.setUniform("modelViewMatrix",
-				transformation.getModelViewMatrix(heightmap, transformation.getViewMatrix(camera)));
-		heightmap.getMesh().render();
+		terrainShader.setUniform(terrainUniforms.reflectance, heightmap.getReflectance());
+		terrainShader.setUniform(terrainUniforms.modelMatrix, transformation.getModelMatrix(heightmap));
+		heightmap.getTerrain().render(culler, transformation.getModelMatrix(heightmap), terrainShader);
 		terrainShader.unbind();
 	}
 
-	private void renderLights(ShaderProgram shader, Camera camera, PointLight[] pointLightList,
-			DirectionalLight directionalLight) {
-
-		Matrix4f viewMatrix = transformation.getViewMatrix(camera);
-		shader.setUniform("ambientLight", AMBIENT_LIGHT);
-		shader.setUniform("specularPower", SPECULAR_POWER);
-
-		// Process Point Lights
-		int numLights = pointLightList != null ? pointLightList.length : 0;
-		for (int i = 0; i < numLights; i++) {
-			// Get a copy of the point light object and transform its position
-			// to view coordinates
-			PointLight currPointLight = new PointLight(pointLightList[i]);
-			Vector3f lightPos = currPointLight.getPosition();
-			Vector4f aux = new Vector4f(lightPos, 1);
-			aux.mul(viewMatrix);
-			lightPos.x = aux.x;
-			lightPos.y = aux.y;
-			lightPos.z = aux.z;
-			shader.setUniform("pointLights", currPointLight, i);
-		}
-
-		// // Process Spot Ligths
-		// numLights = spotLightList != null ? spotLightList.length : 0;
-		// for (int i = 0; i < numLights; i++) {
-		// // Get a copy of the spot light object and transform its position and
-		// cone direction to view coordinates
-		// SpotLight currSpotLight = new SpotLight(spotLightList[i]);
-		// Vector4f dir = new Vector4f(currSpotLight.getConeDirection(), 0);
-		// dir.mul(viewMatrix);
-		// currSpotLight.setConeDirection(new Vector3f(dir.x, dir.y, dir.z));
-		// Vector3f lightPos = currSpotLight.getPointLight().getPosition();
-		//
-		// Vector4f aux = new Vector4f(lightPos, 1);
-		// aux.mul(viewMatrix);
-		// lightPos.x = aux.x;
-		// lightPos.y = aux.y;
-		// lightPos.z = aux.z;
-		//
-		// shaderProgram.setUniform("spotLights", currSpotLight, i);
-		// }
-
-		// Get a copy of the directional light object and transform its position
-		// to view coordinates
-		DirectionalLight currDirLight = new DirectionalLight(directionalLight);
-		Vector4f dir = new Vector4f(currDirLight.getDirection(), 0);
-		dir.mul(viewMatrix);
-		currDirLight.setDirection(new Vector3f(dir.x, dir.y, dir.z));
-		shader.setUniform("directionalLight", currDirLight);
+	/**
+	 * @return the number of models and terrain chunks drawn over all passes of
+	 *         the last frame
+	 */
+	public int getVisibleCount() {
+		return visibleCount;
+	}
 
+	/**
+	 * @return the number of models and terrain chunks culled over all passes
+	 *         of the last frame
+	 */
+	public int getCulledCount() {
+		return culledCount;
 	}
 
 	public void cleanup() {
@@ -238,6 +298,9 @@ public class Renderer {
 		if (fbos != null) {
 			fbos.cleanup();
 		}
+		if (sceneBuffers != null) {
+			sceneBuffers.cleanup();
+		}
 	}
 
 }
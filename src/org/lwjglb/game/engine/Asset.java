@@ -0,0 +1,106 @@
+package org.lwjglb.game.engine;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Handle of an asset loaded by an {@link AssetManager}. Until the asset is
+ * ready {@link #get()} returns the placeholder, so the game can keep
+ * rendering while assets stream in.
+ * <p>
+ * The future is completed on the GL thread, in {@link AssetManager#update()},
+ * so callbacks attached to it may use GL.
+ */
+public class Asset<T> {
+
+	private final String name;
+
+	private final T placeholder;
+
+	private final CompletableFuture<T> future = new CompletableFuture<>();
+
+	private volatile T value;
+
+	final long queuedTime = System.nanoTime();
+
+	volatile long loadStartTime;
+
+	volatile long loadEndTime;
+
+	volatile long readyTime;
+
+	Asset(String name, T placeholder) {
+		this.name = name;
+		this.placeholder = placeholder;
+	}
+
+	void complete(T value) {
+		this.value = value;
+		readyTime = System.nanoTime();
+		future.complete(value);
+	}
+
+	void fail(Throwable error) {
+		readyTime = System.nanoTime();
+		future.completeExceptionally(error);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the asset if it is ready, the placeholder otherwise
+	 */
+	public T get() {
+		T current = value;
+		return current != null ? current : placeholder;
+	}
+
+	public boolean isReady() {
+		return value != null;
+	}
+
+	public CompletableFuture<T> getFuture() {
+		return future;
+	}
+
+	/**
+	 * @return the time spent waiting for a worker, in milliseconds
+	 */
+	public float getQueueMillis() {
+		return millis(queuedTime, loadStartTime);
+	}
+
+	/**
+	 * @return the time spent loading on the worker, in milliseconds
+	 */
+	public float getLoadMillis() {
+		return millis(loadStartTime, loadEndTime);
+	}
+
+	/**
+	 * @return the time from the end of loading until the asset was ready on
+	 *         the GL thread, including the upload, in milliseconds
+	 */
+	public float getUploadMillis() {
+		return millis(loadEndTime, readyTime);
+	}
+
+	/**
+	 * @return the time from the request until the asset was ready, in
+	 *         milliseconds
+	 */
+	public float getTotalMillis() {
+		return millis(queuedTime, readyTime);
+	}
+
+	private static float millis(long start, long end) {
+		return start == 0 || end == 0 ? 0 : (end - start) / 1e6f;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: queued %.1f ms, loaded %.1f ms, uploaded %.1f ms, total %.1f ms", name,
+				getQueueMillis(), getLoadMillis(), getUploadMillis(), getTotalMillis());
+	}
+}
@@ -0,0 +1,206 @@
+package org.lwjglb.game.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads assets without blocking the game loop. Parsing and building run on a
+ * pool of worker threads and produce CPU side data, such as {@link MeshData}.
+ * Once per frame {@link #update()} finishes the loaded assets on the GL
+ * thread, uploading meshes until the upload budget of the frame is used up.
+ * <p>
+ * Every request returns an {@link Asset} with a future and a placeholder,
+ * and records how long the asset waited, loaded and took to upload.
+ */
+public class AssetManager {
+
+	private static final float[] CUBE_POSITIONS = { -.5f, .5f, .5f, -.5f, -.5f, .5f, .5f, -.5f, .5f, .5f, .5f, .5f,
+			-.5f, .5f, -.5f, -.5f, -.5f, -.5f, .5f, -.5f, -.5f, .5f, .5f, -.5f };
+
+	private static final int[] CUBE_INDICES = { 0, 1, 3, 3, 1, 2, 4, 0, 3, 5, 4, 3, 3, 2, 7, 5, 3, 7, 6, 1, 0, 6, 0,
+			4, 2, 1, 6, 2, 6, 7, 7, 6, 4, 7, 4, 5 };
+
+	private final ExecutorService workers;
+
+	private final Queue<Runnable> finished = new ConcurrentLinkedQueue<>();
+
+	private final Queue<PendingMesh> uploads = new ConcurrentLinkedQueue<>();
+
+	private final List<Asset<?>> assets = new ArrayList<>();
+
+	private final List<Mesh> meshes = new ArrayList<>();
+
+	private long uploadBytesPerFrame = 4 * 1024 * 1024;
+
+	private Mesh placeholderMesh;
+
+	/**
+	 * @param threads
+	 *            number of worker threads
+	 */
+	public AssetManager(int threads) {
+		AtomicInteger count = new AtomicInteger();
+		workers = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "ASSET_LOADER_" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * @param uploadBytesPerFrame
+	 *            how many bytes of mesh data are uploaded per frame. At least
+	 *            one mesh is uploaded per frame, however large.
+	 */
+	public void setUploadBytesPerFrame(long uploadBytesPerFrame) {
+		this.uploadBytesPerFrame = uploadBytesPerFrame;
+	}
+
+	/**
+	 * Runs a task on a worker. The result needs no upload and is handed over
+	 * on the next {@link #update()}.
+	 *
+	 * @param placeholder
+	 *            what {@link Asset#get()} returns until the result is ready,
+	 *            may be {@code null}
+	 */
+	public <T> Asset<T> load(String name, Callable<T> task, T placeholder) {
+		Asset<T> asset = new Asset<>(name, placeholder);
+		assets.add(asset);
+		workers.execute(() -> {
+			asset.loadStartTime = System.nanoTime();
+			try {
+				T result = task.call();
+				asset.loadEndTime = System.nanoTime();
+				finished.add(() -> asset.complete(result));
+			} catch (Throwable e) {
+				asset.loadEndTime = System.nanoTime();
+				finished.add(() -> asset.fail(e));
+			}
+		});
+		return asset;
+	}
+
+	/**
+	 * Builds mesh data on a worker and uploads it as a {@link Mesh} on the GL
+	 * thread. The placeholder is a unit cube. The manager owns the mesh and
+	 * deletes it in {@link #cleanup()}.
+	 */
+	public Asset<Mesh> loadMesh(String name, Callable<MeshData> task) {
+		Asset<Mesh> asset = new Asset<>(name, getPlaceholderMesh());
+		assets.add(asset);
+		workers.execute(() -> {
+			asset.loadStartTime = System.nanoTime();
+			try {
+				MeshData data = task.call();
+				asset.loadEndTime = System.nanoTime();
+				uploads.add(new PendingMesh(asset, data));
+			} catch (Throwable e) {
+				asset.loadEndTime = System.nanoTime();
+				finished.add(() -> asset.fail(e));
+			}
+		});
+		return asset;
+	}
+
+	/**
+	 * Hands over finished assets and uploads loaded meshes within the budget
+	 * of the frame. Must be called once per frame on the GL thread.
+	 */
+	public void update() {
+		Runnable completion;
+		while ((completion = finished.poll()) != null) {
+			completion.run();
+		}
+
+		long uploaded = 0;
+		while (uploaded < uploadBytesPerFrame) {
+			PendingMesh pending = uploads.poll();
+			if (pending == null) {
+				break;
+			}
+			Mesh mesh;
+			try {
+				mesh = new Mesh(pending.data);
+			} catch (RuntimeException e) {
+				// a mesh that cannot be uploaded fails its asset, not the frame
+				pending.asset.fail(e);
+				continue;
+			} finally {
+				pending.data.free();
+			}
+			meshes.add(mesh);
+			uploaded += mesh.getSizeInBytes();
+			pending.asset.complete(mesh);
+		}
+	}
+
+	/**
+	 * @return the mesh shown until a mesh has been uploaded
+	 */
+	public Mesh getPlaceholderMesh() {
+		if (placeholderMesh == null) {
+			float[] colors = new float[CUBE_POSITIONS.length];
+			Arrays.fill(colors, .5f);
+			placeholderMesh = new Mesh(CUBE_POSITIONS, CUBE_INDICES, colors);
+		}
+		return placeholderMesh;
+	}
+
+	/**
+	 * @return every asset requested so far, with its timings
+	 */
+	public List<Asset<?>> getAssets() {
+		return assets;
+	}
+
+	/**
+	 * @return whether every asset requested so far is ready or failed
+	 */
+	public boolean isIdle() {
+		for (Asset<?> asset : assets) {
+			if (!asset.getFuture().isDone()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stops the workers and deletes the meshes uploaded by this manager.
+	 */
+	public void cleanup() {
+		workers.shutdownNow();
+		PendingMesh pending;
+		while ((pending = uploads.poll()) != null) {
+			pending.data.free();
+		}
+		for (Mesh mesh : meshes) {
+			mesh.cleanup();
+		}
+		meshes.clear();
+		if (placeholderMesh != null) {
+			placeholderMesh.cleanup();
+			placeholderMesh = null;
+		}
+	}
+
+	private static class PendingMesh {
+
+		private final Asset<Mesh> asset;
+
+		private final MeshData data;
+
+		PendingMesh(Asset<Mesh> asset, MeshData data) {
+			this.asset = asset;
+			this.data = data;
+		}
+	}
+}
@@ -1,4 +1,5 @@
 package org.lwjglb.game.engine;
+import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
 public class Camera {
@@ -6,6 +7,13 @@ public class Camera {
     private final Vector3f position;
     
     private final Vector3f rotation;
+
+    private final Matrix4f viewMatrix = new Matrix4f();
+
+    // the position and rotation the view matrix was last computed for
+    private final Vector3f viewPosition = new Vector3f(Float.NaN);
+
+    private final Vector3f viewRotation = new Vector3f(Float.NaN);
     
     public Camera() {
         position = new Vector3f(0, 0, 0);
@@ -55,4 +63,22 @@ public class Camera {
         rotation.y = (rotation.y + offsetY + 360f) % 360f;
         rotation.z = (rotation.z + offsetZ + 360f) % 360f;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the view matrix of this camera. It is only recomputed when the
+     *         position or rotation changed.
+     */
+    public Matrix4f getViewMatrix() {
+        if (!position.equals(viewPosition) || !rotation.equals(viewRotation)) {
+            viewPosition.set(position);
+            viewRotation.set(rotation);
+            viewMatrix.identity();
+            // First do the rotation so camera rotates over its position
+            viewMatrix.rotateX((float) Math.toRadians(rotation.x))
+                    .rotateY((float) Math.toRadians(rotation.y));
+            // Then do the translation
+            viewMatrix.translate(-position.x, -position.y, -position.z);
+        }
+        return viewMatrix;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,175 @@
+package org.lwjglb.game.engine;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector4f;
+import org.lwjglb.game.GameModel;
+
+/**
+ * Tests world space bounding boxes against the view frustum of one render
+ * pass and against the pass's clip plane.
+ * <p>
+ * Objects remember per culler the plane that culled them last, and the next
+ * test starts with that plane. An object that was outside the frustum last
+ * frame is most likely still outside of the same plane, so it is usually
+ * rejected after a single plane test.
+ */
+public class FrustumCuller {
+
+	/**
+	 * Number of cullers an object can keep its last culling plane for.
+	 */
+	public static final int MAX_SLOTS = 4;
+
+	/**
+	 * Returned by {@link #intersect} if the box is completely on the clipped
+	 * side of the clip plane.
+	 */
+	public static final int CLIP_PLANE = 6;
+
+	public static final int PLANE_MASK_CLIP = 1 << CLIP_PLANE;
+
+	public static final int ALL_PLANES = FrustumIntersection.PLANE_MASK_NX | FrustumIntersection.PLANE_MASK_PX
+			| FrustumIntersection.PLANE_MASK_NY | FrustumIntersection.PLANE_MASK_PY
+			| FrustumIntersection.PLANE_MASK_NZ | FrustumIntersection.PLANE_MASK_PZ | PLANE_MASK_CLIP;
+
+	private final int slot;
+
+	private final FrustumIntersection frustum = new FrustumIntersection();
+
+	private final Vector4f clipPlane = new Vector4f();
+
+	private boolean hasClipPlane;
+
+	private int visibleCount;
+
+	private int culledCount;
+
+	/**
+	 * @param slot
+	 *            index, below {@link #MAX_SLOTS}, under which objects keep the
+	 *            last plane that culled them for this culler
+	 */
+	public FrustumCuller(int slot) {
+		if (slot < 0 || slot >= MAX_SLOTS) {
+			throw new IllegalArgumentException("Culler slot out of range: " + slot);
+		}
+		this.slot = slot;
+	}
+
+	/**
+	 * Rebuilds the frustum for a new pass and resets the counters.
+	 *
+	 * @param viewProjectionMatrix
+	 *            projection matrix times view matrix of the pass
+	 * @param clipPlane
+	 *            the world space clip plane of the pass, everything with a
+	 *            negative distance to it is clipped. All zeros clips nothing.
+	 */
+	public void update(Matrix4f viewProjectionMatrix, Vector4f clipPlane) {
+		frustum.set(viewProjectionMatrix);
+		this.clipPlane.set(clipPlane);
+		hasClipPlane = clipPlane.x != 0 || clipPlane.y != 0 || clipPlane.z != 0;
+		visibleCount = 0;
+		culledCount = 0;
+	}
+
+	/**
+	 * Tests the world space bounding box of a model and counts the result.
+	 * Models without a mesh are always visible.
+	 */
+	public boolean isVisible(GameModel model) {
+		if (model.getMesh() == null) {
+			visibleCount++;
+			return true;
+		}
+		int result = intersect(model.getWorldMin().x, model.getWorldMin().y, model.getWorldMin().z,
+				model.getWorldMax().x, model.getWorldMax().y, model.getWorldMax().z, ALL_PLANES,
+				model.getCullingPlanes());
+		if (result >= 0) {
+			culledCount++;
+			return false;
+		}
+		visibleCount++;
+		return true;
+	}
+
+	/**
+	 * Tests a world space bounding box without counting the result.
+	 *
+	 * @param mask
+	 *            the planes to test, any combination of the plane masks of
+	 *            {@link FrustumIntersection} and {@link #PLANE_MASK_CLIP}
+	 * @param cullingPlanes
+	 *            the last planes that culled the box, {@link #MAX_SLOTS} long
+	 * @return the plane that culled the box, {@link FrustumIntersection#INSIDE}
+	 *         if the box is inside of all tested planes, or
+	 *         {@link FrustumIntersection#INTERSECT} otherwise
+	 */
+	public int intersect(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int mask,
+			int[] cullingPlanes) {
+		boolean testClipPlane = hasClipPlane && (mask & PLANE_MASK_CLIP) != 0;
+		int startPlane = cullingPlanes[slot];
+		if (startPlane == CLIP_PLANE) {
+			if (testClipPlane && maxClipDistance(minX, minY, minZ, maxX, maxY, maxZ) < 0) {
+				return CLIP_PLANE;
+			}
+			startPlane = FrustumIntersection.PLANE_NX;
+		}
+		int result = frustum.intersectAab(minX, minY, minZ, maxX, maxY, maxZ, mask & ~PLANE_MASK_CLIP, startPlane);
+		if (result >= 0) {
+			cullingPlanes[slot] = result;
+			return result;
+		}
+		if (testClipPlane) {
+			if (maxClipDistance(minX, minY, minZ, maxX, maxY, maxZ) < 0) {
+				cullingPlanes[slot] = CLIP_PLANE;
+				return CLIP_PLANE;
+			}
+			if (result == FrustumIntersection.INSIDE && minClipDistance(minX, minY, minZ, maxX, maxY, maxZ) < 0) {
+				result = FrustumIntersection.INTERSECT;
+			}
+		}
+		return result;
+	}
+
+	private float maxClipDistance(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		return clipPlane.x * (clipPlane.x < 0 ? minX : maxX) + clipPlane.y * (clipPlane.y < 0 ? minY : maxY)
+				+ clipPlane.z * (clipPlane.z < 0 ? minZ : maxZ) + clipPlane.w;
+	}
+
+	private float minClipDistance(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		return clipPlane.x * (clipPlane.x < 0 ? maxX : minX) + clipPlane.y * (clipPlane.y < 0 ? maxY : minY)
+				+ clipPlane.z * (clipPlane.z < 0 ? maxZ : minZ) + clipPlane.w;
+	}
+
+	public void countVisible() {
+		visibleCount++;
+	}
+
+	public void countCulled() {
+		culledCount++;
+	}
+
+	/**
+	 * @return the number of objects found visible since the last
+	 *         {@link #update}
+	 */
+	public int getVisibleCount() {
+		return visibleCount;
+	}
+
+	/**
+	 * @return the number of objects culled since the last {@link #update}
+	 */
+	public int getCulledCount() {
+		return culledCount;
+	}
+
+	/**
+	 * @return a fresh array to keep the last culling planes of an object in
+	 */
+	public static int[] createCullingPlanes() {
+		return new int[MAX_SLOTS];
+	}
+}
@@ -1,111 +1,274 @@
 package org.lwjglb.game.engine;
 
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 
-import org.lwjgl.BufferUtils;
+import org.joml.Vector3f;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL15;
 import org.lwjgl.opengl.GL20;
 import org.lwjgl.opengl.GL30;
+import org.lwjgl.system.MemoryUtil;
 
+/**
+ * Vertex and index buffers of a triangle mesh bound in a VAO. Positions,
+ * colors and normals go to the attributes 0, 1 and 2.
+ * <p>
+ * By default all attributes are interleaved in a single vertex buffer, which
+ * keeps the data of a vertex together for the vertex fetch. The encoding of
+ * the attributes is given by a {@link VertexFormat}. A float buffer per
+ * attribute can still be requested. Either way the attribute arrays are
+ * enabled once when the VAO is created, so drawing only binds the VAO.
+ * <p>
+ * Indices are stored as unsigned shorts whenever the largest index fits,
+ * and as unsigned ints otherwise.
+ */
 public class Mesh {
+
+	private static final int POSITION = 0;
+	private static final int COLOR = 1;
+	private static final int NORMAL = 2;
+
 	private final int vaoId;
-	private final int vertexVboId;
-	private final int colorVboId;
-	private final int normalVboId;
+	private final int[] vboIds;
 	private final int indexVboId;
 
 	private final int indexCount;
 
+	private final int indexType;
+
+	private final long sizeInBytes;
+
+	private final Vector3f min = new Vector3f();
+	private final Vector3f max = new Vector3f();
+
 	public Mesh(float[] positions, float[] colors, float[] normals, int[] indices) {
+		this(positions, colors, normals, indices, VertexFormat.FLOAT);
+	}
+
+	public Mesh(float[] positions, int[] indices, float[] colors) {
+		this(positions, colors, null, indices, VertexFormat.FLOAT);
+	}
+
+	/**
+	 * @param normals
+	 *            the normals, or {@code null} if the mesh has none
+	 * @param interleaved
+	 *            whether to interleave the attributes in one buffer instead
+	 *            of a buffer per attribute
+	 */
+	public Mesh(float[] positions, float[] colors, float[] normals, int[] indices, boolean interleaved) {
+		this(positions, colors, normals, indices, interleaved ? VertexFormat.FLOAT : null);
+	}
+
+	/**
+	 * @param normals
+	 *            the normals, or {@code null} if the mesh has none
+	 * @param format
+	 *            the layout of the interleaved vertex buffer, or {@code null}
+	 *            for a float buffer per attribute
+	 */
+	public Mesh(float[] positions, float[] colors, float[] normals, int[] indices, VertexFormat format) {
+		this(positions, colors, normals, createIndexBuffer(indices), true, format);
+	}
+
+	/**
+	 * @param indices
+	 *            the indices, read as unsigned shorts
+	 */
+	public Mesh(float[] positions, float[] colors, float[] normals, short[] indices, VertexFormat format) {
+		this(positions, colors, normals, createIndexBuffer(indices), true, format);
+	}
+
+	/**
+	 * @param indices
+	 *            the indices between position and limit of the buffer, read
+	 *            as unsigned shorts
+	 */
+	public Mesh(float[] positions, float[] colors, float[] normals, ShortBuffer indices, VertexFormat format) {
+		this(positions, colors, normals, indices, false, format);
+	}
+
+	/**
+	 * Uploads prepared buffers as they are. The data is not freed and may be
+	 * released after the constructor returns.
+	 */
+	public Mesh(MeshData data) {
+		min.set(data.getMin());
+		max.set(data.getMax());
 		vaoId = GL30.glGenVertexArrays();
 		GL30.glBindVertexArray(vaoId);
 
-		vertexVboId = GL15.glGenBuffers();
-		FloatBuffer verticesBuffer = BufferUtils.createFloatBuffer(positions.length);
-		verticesBuffer.put(positions).flip();
-		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vertexVboId);
-		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, verticesBuffer, GL15.GL_STATIC_DRAW);
-		GL20.glVertexAttribPointer(0, 3, GL11.GL_FLOAT, false, 0, 0);
-
-		colorVboId = GL15.glGenBuffers();
-		FloatBuffer colorBuffer = BufferUtils.createFloatBuffer(colors.length);
-		colorBuffer.put(colors).flip();
-		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, colorVboId);
-		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, colorBuffer, GL15.GL_STATIC_DRAW);
-		GL20.glVertexAttribPointer(1, 3, GL11.GL_FLOAT, false, 0, 0);
-
-		normalVboId = GL15.glGenBuffers();
-		FloatBuffer normalBuffer = BufferUtils.createFloatBuffer(normals.length);
-		normalBuffer.put(normals).flip();
-		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, normalVboId);
-		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, normalBuffer, GL15.GL_STATIC_DRAW);
-		GL20.glVertexAttribPointer(2, 3, GL11.GL_FLOAT, false, 0, 0);
+		int vboId = GL15.glGenBuffers();
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboId);
+		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, data.getVertices(), GL15.GL_STATIC_DRAW);
+		data.getFormat().setupAttributes(data.hasNormals());
+		vboIds = new int[] { vboId };
 
 		indexVboId = GL15.glGenBuffers();
-		IntBuffer indicesBuffer = BufferUtils.createIntBuffer(indices.length);
-		indicesBuffer.put(indices).flip();
 		GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, indexVboId);
-		GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL15.GL_STATIC_DRAW);
-		indexCount = indices.length;
+		GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, data.getIndices(), GL15.GL_STATIC_DRAW);
+		indexCount = data.getIndexCount();
+		indexType = data.getIndexType();
+		sizeInBytes = (long) data.getVertices().remaining() + data.getIndices().remaining();
 
 		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
 		GL30.glBindVertexArray(0);
 	}
 
-	public Mesh(float[] positions, int[] indices, float[] colors) {
+	/**
+	 * @param indices
+	 *            a {@link ShortBuffer} or an {@link IntBuffer}
+	 * @param ownIndices
+	 *            whether the index buffer was allocated for this mesh and is
+	 *            freed after the upload
+	 */
+	private Mesh(float[] positions, float[] colors, float[] normals, Buffer indices, boolean ownIndices,
+			VertexFormat format) {
+		computeBounds(positions);
 		vaoId = GL30.glGenVertexArrays();
 		GL30.glBindVertexArray(vaoId);
 
-		vertexVboId = GL15.glGenBuffers();
-		FloatBuffer verticesBuffer = BufferUtils.createFloatBuffer(positions.length);
-		verticesBuffer.put(positions).flip();
-		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vertexVboId);
-		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, verticesBuffer, GL15.GL_STATIC_DRAW);
-		GL20.glVertexAttribPointer(0, 3, GL11.GL_FLOAT, false, 0, 0);
-
-		colorVboId = GL15.glGenBuffers();
-		FloatBuffer colorBuffer = BufferUtils.createFloatBuffer(colors.length);
-		colorBuffer.put(colors).flip();
-		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, colorVboId);
-		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, colorBuffer, GL15.GL_STATIC_DRAW);
-		GL20.glVertexAttribPointer(1, 3, GL11.GL_FLOAT, false, 0, 0);
+		long vertexBytes;
+		int vertexCount = positions.length / 3;
+		if (format != null) {
+			vboIds = new int[] { createInterleavedBuffer(positions, colors, normals, format) };
+			vertexBytes = (long) vertexCount * format.getStride(normals != null);
+		} else if (normals != null) {
+			vboIds = new int[] { createAttributeBuffer(POSITION, positions), createAttributeBuffer(COLOR, colors),
+					createAttributeBuffer(NORMAL, normals) };
+			vertexBytes = vertexCount * 36L;
+		} else {
+			vboIds = new int[] { createAttributeBuffer(POSITION, positions), createAttributeBuffer(COLOR, colors) };
+			vertexBytes = vertexCount * 24L;
+		}
 
 		indexVboId = GL15.glGenBuffers();
-		IntBuffer indicesBuffer = BufferUtils.createIntBuffer(indices.length);
-		indicesBuffer.put(indices).flip();
 		GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, indexVboId);
-		GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL15.GL_STATIC_DRAW);
-		indexCount = indices.length;
-
-		normalVboId = -1;
+		indexCount = indices.remaining();
+		if (indices instanceof ShortBuffer) {
+			GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, (ShortBuffer) indices, GL15.GL_STATIC_DRAW);
+			indexType = GL11.GL_UNSIGNED_SHORT;
+			sizeInBytes = vertexBytes + indexCount * 2L;
+		} else {
+			GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, (IntBuffer) indices, GL15.GL_STATIC_DRAW);
+			indexType = GL11.GL_UNSIGNED_INT;
+			sizeInBytes = vertexBytes + indexCount * 4L;
+		}
+		if (ownIndices) {
+			MemoryUtil.memFree(indices);
+		}
 
 		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
 		GL30.glBindVertexArray(0);
 	}
 
+	/**
+	 * @return the indices in a {@link ShortBuffer} if all of them fit into an
+	 *         unsigned short, in an {@link IntBuffer} otherwise
+	 */
+	private static Buffer createIndexBuffer(int[] indices) {
+		int maxIndex = 0;
+		for (int index : indices) {
+			maxIndex = Math.max(maxIndex, index);
+		}
+		if (maxIndex <= 0xffff) {
+			ShortBuffer buffer = MemoryUtil.memAllocShort(indices.length);
+			for (int index : indices) {
+				buffer.put((short) index);
+			}
+			buffer.flip();
+			return buffer;
+		}
+		IntBuffer buffer = MemoryUtil.memAllocInt(indices.length);
+		buffer.put(indices).flip();
+		return buffer;
+	}
+
+	private static Buffer createIndexBuffer(short[] indices) {
+		ShortBuffer buffer = MemoryUtil.memAllocShort(indices.length);
+		buffer.put(indices).flip();
+		return buffer;
+	}
+
+	private static int createInterleavedBuffer(float[] positions, float[] colors, float[] normals,
+			VertexFormat format) {
+		ByteBuffer buffer = MemoryUtil.memAlloc(positions.length / 3 * format.getStride(normals != null));
+		format.write(buffer, positions, colors, normals);
+		buffer.flip();
+
+		int vboId = GL15.glGenBuffers();
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboId);
+		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
+		MemoryUtil.memFree(buffer);
+
+		format.setupAttributes(normals != null);
+		return vboId;
+	}
+
+	private static int createAttributeBuffer(int attribute, float[] data) {
+		FloatBuffer buffer = MemoryUtil.memAllocFloat(data.length);
+		buffer.put(data).flip();
+
+		int vboId = GL15.glGenBuffers();
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboId);
+		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
+		MemoryUtil.memFree(buffer);
+
+		GL20.glVertexAttribPointer(attribute, 3, GL11.GL_FLOAT, false, 0, 0);
+		GL20.glEnableVertexAttribArray(attribute);
+		return vboId;
+	}
+
+	private void computeBounds(float[] positions) {
+		min.set(Float.POSITIVE_INFINITY);
+		max.set(Float.NEGATIVE_INFINITY);
+		for (int i = 0; i < positions.length; i += 3) {
+			min.x = Math.min(min.x, positions[i]);
+			min.y = Math.min(min.y, positions[i + 1]);
+			min.z = Math.min(min.z, positions[i + 2]);
+			max.x = Math.max(max.x, positions[i]);
+			max.y = Math.max(max.y, positions[i + 1]);
+			max.z = Math.max(max.z, positions[i + 2]);
+		}
+	}
+
+	/**
+	 * @return the minimum corner of the model space bounding box
+	 */
+	public Vector3f getMin() {
+		return min;
+	}
+
+	/**
+	 * @return the maximum corner of the model space bounding box
+	 */
+	public Vector3f getMax() {
+		return max;
+	}
+
+	/**
+	 * @return the GPU memory taken by the vertex and index buffers
+	 */
+	public long getSizeInBytes() {
+		return sizeInBytes;
+	}
+
 	public int getVaoId() {
 		return vaoId;
 	}
 
 	public void cleanup() {
-		GL20.glDisableVertexAttribArray(0);
-		GL20.glDisableVertexAttribArray(1);
-		GL20.glDisableVertexAttribArray(2);
-
-		// Delete the vertex vbo
+		// Delete the vertex and index vbos
 		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
-		GL15.glDeleteBuffers(vertexVboId);
-
-		GL15.glDeleteBuffers(colorVboId);
-
-		// Delete the index vbo
+		for (int vboId : vboIds) {
+			GL15.glDeleteBuffers(vboId);
+		}
 		GL15.glDeleteBuffers(indexVboId);
 
-		// Delete the color vbo
-		GL15.glDeleteBuffers(normalVboId);
-
 		// Delete the VAO
 		GL30.glBindVertexArray(0);
 		GL30.glDeleteVertexArrays(vaoId);
@@ -113,15 +276,7 @@ public class Mesh {
 
 	public void render() {
 		GL30.glBindVertexArray(getVaoId());
-		GL20.glEnableVertexAttribArray(0);
-		GL20.glEnableVertexAttribArray(1);
-		GL20.glEnableVertexAttribArray(2);
-
-		GL11.glDrawElements(GL11.GL_TRIANGLES, indexCount, GL11.GL_UNSIGNED_INT, 0);
-
-		GL20.glDisableVertexAttribArray(0);
-		GL20.glDisableVertexAttribArray(1);
-		GL20.glDisableVertexAttribArray(2);
+		GL11.glDrawElements(GL11.GL_TRIANGLES, indexCount, indexType, 0);
 		GL30.glBindVertexArray(0);
 	}
 }
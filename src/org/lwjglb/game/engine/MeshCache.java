@@ -0,0 +1,225 @@
+package org.lwjglb.game.engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.joml.Vector3f;
+import org.lwjgl.opengl.GL11;
+
+/**
+ * A directory of preprocessed meshes, stored in the layout of
+ * {@link MeshData} so that loading them is only mapping a file.
+ * <p>
+ * Every entry is keyed by the SHA-1 of the source file, the vertex format and
+ * the {@link #PIPELINE_VERSION}, so an edited source or a changed conversion
+ * is converted again while the stale entry is simply not used any more. A
+ * cached file consists of a header followed by the vertex and the index
+ * buffer, in native byte order. Hits are memory mapped and the mapped
+ * buffers are passed to GL as they are, without a copy on the Java heap.
+ * The mapping is released when the buffers are garbage collected.
+ */
+public class MeshCache {
+
+	/**
+	 * Converts a source file into a mesh on a cache miss.
+	 */
+	public interface Loader {
+		MeshData load() throws IOException;
+	}
+
+	private static final int MAGIC = 0x4c574d48;
+
+	private static final int VERSION = 1;
+
+	/**
+	 * Version of the conversion from source files to meshes. Must be
+	 * increased whenever the loaders or the mesh optimizer change their
+	 * output, so that entries converted before are not used any more.
+	 */
+	private static final int PIPELINE_VERSION = 2;
+
+	private static final int HEADER_SIZE = 56;
+
+	private static final int HALF_POSITIONS = 1;
+	private static final int PACKED_NORMALS = 2;
+	private static final int BYTE_COLORS = 4;
+	private static final int NORMALS = 8;
+	private static final int FORMAT_FLAGS = HALF_POSITIONS | PACKED_NORMALS | BYTE_COLORS;
+
+	private final Path directory;
+
+	public MeshCache(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Returns the cached mesh of a resource, converting and storing it first
+	 * if there is no entry for the current contents of the resource.
+	 *
+	 * @param resource
+	 *            the class path resource the mesh is loaded from
+	 * @param format
+	 *            the vertex format the loader produces
+	 * @param loader
+	 *            converts the resource on a cache miss
+	 */
+	public MeshData load(String resource, VertexFormat format, Loader loader) throws IOException {
+		int formatFlags = getFlags(format);
+		Path file = directory.resolve(hash(resource, formatFlags) + ".mesh");
+		if (Files.isRegularFile(file)) {
+			MeshData data = map(file, formatFlags);
+			if (data != null) {
+				return data;
+			}
+		}
+		MeshData data = loader.load();
+		if (getFlags(data.getFormat()) != formatFlags) {
+			data.free();
+			throw new IOException("Loader of " + resource + " did not produce the expected vertex format");
+		}
+		write(file, data);
+		return data;
+	}
+
+	private static int getFlags(VertexFormat format) {
+		return (format.hasHalfPositions() ? HALF_POSITIONS : 0) | (format.hasPackedNormals() ? PACKED_NORMALS : 0)
+				| (format.hasByteColors() ? BYTE_COLORS : 0);
+	}
+
+	private static String hash(String resource, int formatFlags) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		digest.update(ByteBuffer.allocate(8).putInt(PIPELINE_VERSION).putInt(formatFlags).array());
+		try (InputStream in = MeshCache.class.getResourceAsStream(resource)) {
+			if (in == null) {
+				throw new IOException("Resource not found: " + resource);
+			}
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		StringBuilder name = new StringBuilder();
+		for (byte b : digest.digest()) {
+			name.append(String.format("%02x", b));
+		}
+		return name.toString();
+	}
+
+	/**
+	 * @return the mapped mesh, or {@code null} if the file is not a valid
+	 *         entry of this version, byte order and vertex format
+	 */
+	private static MeshData map(Path file, int formatFlags) throws IOException {
+		MappedByteBuffer mapped;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE) {
+				return null;
+			}
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		mapped.order(ByteOrder.nativeOrder());
+		if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+			return null;
+		}
+		int flags = mapped.getInt(8);
+		int vertexCount = mapped.getInt(12);
+		int vertexBytes = mapped.getInt(16);
+		int indexType = mapped.getInt(20);
+		int indexCount = mapped.getInt(24);
+		int indexBytes = mapped.getInt(28);
+		Vector3f min = new Vector3f(mapped.getFloat(32), mapped.getFloat(36), mapped.getFloat(40));
+		Vector3f max = new Vector3f(mapped.getFloat(44), mapped.getFloat(48), mapped.getFloat(52));
+		int indexOffset = align(HEADER_SIZE + vertexBytes);
+		if (vertexBytes < 0 || indexBytes < 0 || (long) indexOffset + indexBytes != mapped.capacity()) {
+			return null;
+		}
+		if (indexType != GL11.GL_UNSIGNED_SHORT && indexType != GL11.GL_UNSIGNED_INT) {
+			return null;
+		}
+		if ((flags & FORMAT_FLAGS) != formatFlags) {
+			return null;
+		}
+		VertexFormat format = new VertexFormat((flags & HALF_POSITIONS) != 0, (flags & PACKED_NORMALS) != 0,
+				(flags & BYTE_COLORS) != 0);
+		boolean hasNormals = (flags & NORMALS) != 0;
+		int indexSize = indexType == GL11.GL_UNSIGNED_SHORT ? 2 : 4;
+		if (vertexCount < 0 || indexCount < 0 || vertexBytes != (long) vertexCount * format.getStride(hasNormals)
+				|| indexBytes != (long) indexCount * indexSize) {
+			return null;
+		}
+
+		ByteBuffer vertices = slice(mapped, HEADER_SIZE, vertexBytes);
+		ByteBuffer indices = slice(mapped, indexOffset, indexBytes);
+		return new MeshData(format, hasNormals, vertexCount, vertices, indexType, indexCount, indices, min, max);
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+		ByteBuffer view = buffer.duplicate();
+		view.limit(offset + length).position(offset);
+		return view.slice().order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Writes to a temporary file first, so a crash never leaves a truncated
+	 * entry behind.
+	 */
+	private void write(Path file, MeshData data) throws IOException {
+		Files.createDirectories(directory);
+		VertexFormat format = data.getFormat();
+		int flags = getFlags(format) | (data.hasNormals() ? NORMALS : 0);
+		ByteBuffer vertices = data.getVertices().duplicate();
+		ByteBuffer indices = data.getIndices().duplicate();
+		int vertexBytes = vertices.remaining();
+
+		ByteBuffer header = ByteBuffer.allocate(align(HEADER_SIZE + vertexBytes) - vertexBytes)
+				.order(ByteOrder.nativeOrder());
+		header.putInt(MAGIC).putInt(VERSION).putInt(flags).putInt(data.getVertexCount()).putInt(vertexBytes)
+				.putInt(data.getIndexType()).putInt(data.getIndexCount()).putInt(indices.remaining());
+		Vector3f min = data.getMin();
+		Vector3f max = data.getMax();
+		header.putFloat(min.x).putFloat(min.y).putFloat(min.z).putFloat(max.x).putFloat(max.y).putFloat(max.z);
+		header.clear();
+		// the padding after the vertices goes out with the header
+		ByteBuffer padding = header.duplicate();
+		padding.position(HEADER_SIZE);
+		header.limit(HEADER_SIZE);
+
+		Path temp = Files.createTempFile(directory, "mesh", ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+			writeFully(channel, header);
+			writeFully(channel, vertices);
+			writeFully(channel, padding);
+			writeFully(channel, indices);
+		} catch (IOException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static int align(int offset) {
+		return offset + 3 & ~3;
+	}
+}
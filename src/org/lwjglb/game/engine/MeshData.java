@@ -0,0 +1,170 @@
+package org.lwjglb.game.engine;
+
+import java.nio.ByteBuffer;
+
+import org.joml.Vector3f;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * A mesh ready for upload: the interleaved vertex buffer and the index buffer
+ * in the exact layout the GPU reads, together with the bounding box.
+ * <p>
+ * Creating it needs no GL context, so meshes can be loaded and prepared on
+ * any thread, or read back from a {@link MeshCache} without any processing.
+ * The buffers are direct and in native byte order. They are either allocated
+ * here and released by {@link #free()}, or views of a memory mapped file
+ * that are released with the mapping.
+ */
+public class MeshData {
+
+	private final VertexFormat format;
+
+	private final boolean hasNormals;
+
+	private final int vertexCount;
+
+	private final ByteBuffer vertices;
+
+	private final int indexType;
+
+	private final int indexCount;
+
+	private final ByteBuffer indices;
+
+	private final Vector3f min;
+
+	private final Vector3f max;
+
+	private final boolean ownBuffers;
+
+	/**
+	 * Wraps existing buffers, which are not freed by {@link #free()}.
+	 *
+	 * @param indexType
+	 *            {@code GL_UNSIGNED_SHORT} or {@code GL_UNSIGNED_INT}
+	 */
+	public MeshData(VertexFormat format, boolean hasNormals, int vertexCount, ByteBuffer vertices, int indexType,
+			int indexCount, ByteBuffer indices, Vector3f min, Vector3f max) {
+		this(format, hasNormals, vertexCount, vertices, indexType, indexCount, indices, min, max, false);
+	}
+
+	private MeshData(VertexFormat format, boolean hasNormals, int vertexCount, ByteBuffer vertices, int indexType,
+			int indexCount, ByteBuffer indices, Vector3f min, Vector3f max, boolean ownBuffers) {
+		this.format = format;
+		this.hasNormals = hasNormals;
+		this.vertexCount = vertexCount;
+		this.vertices = vertices;
+		this.indexType = indexType;
+		this.indexCount = indexCount;
+		this.indices = indices;
+		this.min = min;
+		this.max = max;
+		this.ownBuffers = ownBuffers;
+	}
+
+	/**
+	 * Packs the attribute arrays into newly allocated buffers. The indices are
+	 * stored as unsigned shorts if all of them fit.
+	 *
+	 * @param normals
+	 *            the normals, or {@code null} if the mesh has none
+	 */
+	public static MeshData create(float[] positions, float[] colors, float[] normals, int[] indices,
+			VertexFormat format) {
+		int vertexCount = positions.length / 3;
+		ByteBuffer vertexBuffer = MemoryUtil.memAlloc(vertexCount * format.getStride(normals != null));
+		format.write(vertexBuffer, positions, colors, normals);
+		vertexBuffer.flip();
+
+		int maxIndex = 0;
+		for (int index : indices) {
+			maxIndex = Math.max(maxIndex, index);
+		}
+		int indexType;
+		ByteBuffer indexBuffer;
+		if (maxIndex <= 0xffff) {
+			indexType = GL11.GL_UNSIGNED_SHORT;
+			indexBuffer = MemoryUtil.memAlloc(indices.length * 2);
+			for (int index : indices) {
+				indexBuffer.putShort((short) index);
+			}
+		} else {
+			indexType = GL11.GL_UNSIGNED_INT;
+			indexBuffer = MemoryUtil.memAlloc(indices.length * 4);
+			for (int index : indices) {
+				indexBuffer.putInt(index);
+			}
+		}
+		indexBuffer.flip();
+
+		Vector3f min = new Vector3f(Float.POSITIVE_INFINITY);
+		Vector3f max = new Vector3f(Float.NEGATIVE_INFINITY);
+		for (int i = 0; i < positions.length; i += 3) {
+			min.x = Math.min(min.x, positions[i]);
+			min.y = Math.min(min.y, positions[i + 1]);
+			min.z = Math.min(min.z, positions[i + 2]);
+			max.x = Math.max(max.x, positions[i]);
+			max.y = Math.max(max.y, positions[i + 1]);
+			max.z = Math.max(max.z, positions[i + 2]);
+		}
+		return new MeshData(format, normals != null, vertexCount, vertexBuffer, indexType, indices.length,
+				indexBuffer, min, max, true);
+	}
+
+	public VertexFormat getFormat() {
+		return format;
+	}
+
+	public boolean hasNormals() {
+		return hasNormals;
+	}
+
+	public int getVertexCount() {
+		return vertexCount;
+	}
+
+	/**
+	 * @return the interleaved vertices between position and limit
+	 */
+	public ByteBuffer getVertices() {
+		return vertices;
+	}
+
+	/**
+	 * @return {@code GL_UNSIGNED_SHORT} or {@code GL_UNSIGNED_INT}
+	 */
+	public int getIndexType() {
+		return indexType;
+	}
+
+	public int getIndexCount() {
+		return indexCount;
+	}
+
+	/**
+	 * @return the indices between position and limit
+	 */
+	public ByteBuffer getIndices() {
+		return indices;
+	}
+
+	public Vector3f getMin() {
+		return min;
+	}
+
+	public Vector3f getMax() {
+		return max;
+	}
+
+	/**
+	 * Releases the buffers if they were allocated by {@link #create}. Must
+	 * only be called once the data has been uploaded or written.
+	 */
+	public void free() {
+		if (ownBuffers) {
+			MemoryUtil.memFree(vertices);
+			MemoryUtil.memFree(indices);
+		}
+	}
+}
@@ -0,0 +1,478 @@
+package org.lwjglb.game.engine;
+
+import java.util.Arrays;
+
+/**
+ * Reorders the triangles and vertices of an indexed triangle mesh for the
+ * GPU, without changing what is drawn:
+ * <ol>
+ * <li>triangles are reordered for the post transform vertex cache, following
+ * Tom Forsyth's linear speed vertex cache optimisation,</li>
+ * <li>optionally, clusters of those triangles are sorted so that the ones
+ * facing outwards are drawn first, which reduces overdraw,</li>
+ * <li>vertices are reordered by first use, so the vertex fetch reads the
+ * vertex buffer mostly sequentially.</li>
+ * </ol>
+ * The optimiser only works on arrays and makes no GL calls, so it can run on
+ * any thread or offline. The average cache miss ratio (ACMR, transformed
+ * vertices per triangle) and the average transformed vertex ratio (ATVR,
+ * transformed vertices per vertex) are measured with a simulated FIFO cache
+ * before and after.
+ */
+public class MeshOptimizer {
+
+	/**
+	 * Size of the LRU cache modelled while reordering triangles.
+	 */
+	private static final int CACHE_SIZE = 32;
+
+	/**
+	 * Size of the FIFO cache simulated for the statistics.
+	 */
+	public static final int STATS_CACHE_SIZE = 16;
+
+	private static final float CACHE_DECAY_POWER = 1.5f;
+	private static final float LAST_TRIANGLE_SCORE = 0.75f;
+	private static final float VALENCE_BOOST_SCALE = 2.0f;
+	private static final float VALENCE_BOOST_POWER = 0.5f;
+
+	/**
+	 * A triangle whose three vertices all miss the cache starts a new
+	 * cluster, but only after this many triangles.
+	 */
+	private static final int MIN_CLUSTER_SIZE = 32;
+
+	private float[] positions;
+	private float[] colors;
+	private float[] normals;
+	private int[] indices;
+
+	private boolean optimizeOverdraw;
+
+	private CacheStats statsBefore;
+	private CacheStats statsAfter;
+
+	/**
+	 * @param normals
+	 *            the normals, or {@code null} if the mesh has none
+	 */
+	public MeshOptimizer(float[] positions, float[] colors, float[] normals, int[] indices) {
+		this.positions = positions;
+		this.colors = colors;
+		this.normals = normals;
+		this.indices = indices;
+	}
+
+	/**
+	 * @param optimizeOverdraw
+	 *            whether to sort triangle clusters to reduce overdraw, at the
+	 *            cost of a slightly worse vertex cache use
+	 */
+	public void setOptimizeOverdraw(boolean optimizeOverdraw) {
+		this.optimizeOverdraw = optimizeOverdraw;
+	}
+
+	/**
+	 * Runs all optimisations. The arrays passed in are not modified, the
+	 * getters return the reordered copies afterwards.
+	 */
+	public void optimize() {
+		int vertexCount = positions.length / 3;
+		statsBefore = computeStats(indices, vertexCount, STATS_CACHE_SIZE);
+
+		int[] optimized = optimizeVertexCache(indices, vertexCount);
+		if (optimizeOverdraw) {
+			optimized = optimizeOverdraw(optimized, positions);
+		}
+		int[] remap = optimizeVertexFetch(optimized, vertexCount);
+		int usedVertices = 0;
+		for (int newIndex : remap) {
+			usedVertices = Math.max(usedVertices, newIndex + 1);
+		}
+		positions = remapVertices(positions, 3, remap, usedVertices);
+		colors = remapVertices(colors, 3, remap, usedVertices);
+		if (normals != null) {
+			normals = remapVertices(normals, 3, remap, usedVertices);
+		}
+		indices = optimized;
+
+		statsAfter = computeStats(indices, usedVertices, STATS_CACHE_SIZE);
+	}
+
+	public float[] getPositions() {
+		return positions;
+	}
+
+	public float[] getColors() {
+		return colors;
+	}
+
+	public float[] getNormals() {
+		return normals;
+	}
+
+	public int[] getIndices() {
+		return indices;
+	}
+
+	/**
+	 * @return the cache statistics of the mesh as passed in, after
+	 *         {@link #optimize()}
+	 */
+	public CacheStats getStatsBefore() {
+		return statsBefore;
+	}
+
+	/**
+	 * @return the cache statistics of the optimised mesh, after
+	 *         {@link #optimize()}
+	 */
+	public CacheStats getStatsAfter() {
+		return statsAfter;
+	}
+
+	/**
+	 * Optimizes a mesh and packs the result for upload.
+	 *
+	 * @param optimizeOverdraw
+	 *            whether to sort triangle clusters to reduce overdraw, only
+	 *            worth it for closed, opaque meshes
+	 * @see #optimize()
+	 */
+	public static MeshData optimizeForUpload(float[] positions, float[] colors, float[] normals, int[] indices,
+			boolean optimizeOverdraw, VertexFormat format) {
+		MeshOptimizer optimizer = new MeshOptimizer(positions, colors, normals, indices);
+		optimizer.setOptimizeOverdraw(optimizeOverdraw);
+		optimizer.optimize();
+		return MeshData.create(optimizer.getPositions(), optimizer.getColors(), optimizer.getNormals(),
+				optimizer.getIndices(), format);
+	}
+
+	/**
+	 * Reorders the triangles for a post transform vertex cache.
+	 *
+	 * @return the reordered indices
+	 */
+	public static int[] optimizeVertexCache(int[] indices, int vertexCount) {
+		int triangleCount = indices.length / 3;
+
+		// triangles of every vertex, the ones not yet emitted are kept first
+		int[] liveTriangles = new int[vertexCount];
+		for (int index : indices) {
+			liveTriangles[index]++;
+		}
+		int[] triangleOffsets = new int[vertexCount + 1];
+		for (int v = 0; v < vertexCount; v++) {
+			triangleOffsets[v + 1] = triangleOffsets[v] + liveTriangles[v];
+		}
+		int[] vertexTriangles = new int[indices.length];
+		int[] fill = Arrays.copyOf(triangleOffsets, vertexCount);
+		for (int i = 0; i < indices.length; i++) {
+			vertexTriangles[fill[indices[i]]++] = i / 3;
+		}
+
+		int[] cachePosition = new int[vertexCount];
+		Arrays.fill(cachePosition, -1);
+		float[] vertexScores = new float[vertexCount];
+		for (int v = 0; v < vertexCount; v++) {
+			vertexScores[v] = vertexScore(cachePosition[v], liveTriangles[v]);
+		}
+		float[] triangleScores = new float[triangleCount];
+		for (int t = 0; t < triangleCount; t++) {
+			triangleScores[t] = vertexScores[indices[t * 3]] + vertexScores[indices[t * 3 + 1]]
+					+ vertexScores[indices[t * 3 + 2]];
+		}
+		boolean[] emitted = new boolean[triangleCount];
+
+		int[] cache = new int[CACHE_SIZE + 3];
+		int[] newCache = new int[CACHE_SIZE + 3];
+		int cacheCount = 0;
+
+		int[] result = new int[indices.length];
+		int bestTriangle = -1;
+		float bestScore = -1;
+		for (int t = 0; t < triangleCount; t++) {
+			if (triangleScores[t] > bestScore) {
+				bestScore = triangleScores[t];
+				bestTriangle = t;
+			}
+		}
+		int scanPosition = 0;
+
+		for (int out = 0; out < triangleCount; out++) {
+			if (bestTriangle < 0) {
+				// nothing left around the cache, continue with any triangle
+				while (emitted[scanPosition]) {
+					scanPosition++;
+				}
+				bestTriangle = scanPosition;
+			}
+			int t = bestTriangle;
+			emitted[t] = true;
+			int newCount = 0;
+			for (int k = 0; k < 3; k++) {
+				int v = indices[t * 3 + k];
+				result[out * 3 + k] = v;
+
+				// remove the triangle from the live triangles of the vertex
+				int start = triangleOffsets[v];
+				int last = start + liveTriangles[v] - 1;
+				for (int j = start; j <= last; j++) {
+					if (vertexTriangles[j] == t) {
+						vertexTriangles[j] = vertexTriangles[last];
+						vertexTriangles[last] = t;
+						liveTriangles[v]--;
+						break;
+					}
+				}
+				if (!contains(newCache, newCount, v)) {
+					newCache[newCount++] = v;
+				}
+			}
+			int triangleVertices = newCount;
+			for (int j = 0; j < cacheCount; j++) {
+				if (!contains(newCache, triangleVertices, cache[j])) {
+					newCache[newCount++] = cache[j];
+				}
+			}
+
+			for (int j = 0; j < newCount; j++) {
+				int v = newCache[j];
+				cachePosition[v] = j < CACHE_SIZE ? j : -1;
+				vertexScores[v] = vertexScore(cachePosition[v], liveTriangles[v]);
+			}
+
+			bestTriangle = -1;
+			bestScore = -1;
+			for (int j = 0; j < newCount; j++) {
+				int v = newCache[j];
+				int start = triangleOffsets[v];
+				for (int k = start; k < start + liveTriangles[v]; k++) {
+					int candidate = vertexTriangles[k];
+					float score = vertexScores[indices[candidate * 3]] + vertexScores[indices[candidate * 3 + 1]]
+							+ vertexScores[indices[candidate * 3 + 2]];
+					triangleScores[candidate] = score;
+					if (score > bestScore) {
+						bestScore = score;
+						bestTriangle = candidate;
+					}
+				}
+			}
+
+			int[] swap = cache;
+			cache = newCache;
+			newCache = swap;
+			cacheCount = Math.min(newCount, CACHE_SIZE);
+		}
+		return result;
+	}
+
+	private static float vertexScore(int cachePosition, int liveTriangles) {
+		if (liveTriangles == 0) {
+			// not needed any more
+			return -1;
+		}
+		float score = 0;
+		if (cachePosition >= 0) {
+			if (cachePosition < 3) {
+				// used by the last triangle, a fixed score so the exact
+				// order of the last three does not matter
+				score = LAST_TRIANGLE_SCORE;
+			} else {
+				float scale = 1f / (CACHE_SIZE - 3);
+				score = (float) Math.pow(1 - (cachePosition - 3) * scale, CACHE_DECAY_POWER);
+			}
+		}
+		// prefer vertices with few triangles left, so they are finished off
+		score += VALENCE_BOOST_SCALE * (float) Math.pow(liveTriangles, -VALENCE_BOOST_POWER);
+		return score;
+	}
+
+	private static boolean contains(int[] array, int count, int value) {
+		for (int i = 0; i < count; i++) {
+			if (array[i] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Splits cache optimised indices into clusters where the cache starts
+	 * over and draws the clusters facing away from the center of the mesh
+	 * first. Those are the most likely to occlude the rest.
+	 *
+	 * @return the reordered indices
+	 */
+	public static int[] optimizeOverdraw(int[] indices, float[] positions) {
+		int triangleCount = indices.length / 3;
+		if (triangleCount == 0) {
+			return indices.clone();
+		}
+
+		// cluster starts, found with a simulated FIFO cache
+		int[] clusterStarts = new int[triangleCount + 1];
+		int clusterCount = 0;
+		int[] cacheTime = new int[positions.length / 3];
+		Arrays.fill(cacheTime, Integer.MIN_VALUE / 2);
+		int time = 0;
+		for (int t = 0; t < triangleCount; t++) {
+			int misses = 0;
+			for (int k = 0; k < 3; k++) {
+				int v = indices[t * 3 + k];
+				if (time - cacheTime[v] >= STATS_CACHE_SIZE) {
+					cacheTime[v] = time++;
+					misses++;
+				}
+			}
+			if (t == 0 || misses == 3 && t - clusterStarts[clusterCount - 1] >= MIN_CLUSTER_SIZE) {
+				clusterStarts[clusterCount++] = t;
+			}
+		}
+		clusterStarts[clusterCount] = triangleCount;
+
+		float centerX = 0, centerY = 0, centerZ = 0;
+		for (int i = 0; i < positions.length; i += 3) {
+			centerX += positions[i];
+			centerY += positions[i + 1];
+			centerZ += positions[i + 2];
+		}
+		int vertexCount = Math.max(positions.length / 3, 1);
+		centerX /= vertexCount;
+		centerY /= vertexCount;
+		centerZ /= vertexCount;
+
+		// sort key: how far the cluster faces away from the center
+		float[] keys = new float[clusterCount];
+		Integer[] order = new Integer[clusterCount];
+		for (int c = 0; c < clusterCount; c++) {
+			float areaX = 0, areaY = 0, areaZ = 0;
+			float sumX = 0, sumY = 0, sumZ = 0, area = 0;
+			for (int t = clusterStarts[c]; t < clusterStarts[c + 1]; t++) {
+				int a = indices[t * 3] * 3, b = indices[t * 3 + 1] * 3, d = indices[t * 3 + 2] * 3;
+				float e1x = positions[b] - positions[a], e1y = positions[b + 1] - positions[a + 1],
+						e1z = positions[b + 2] - positions[a + 2];
+				float e2x = positions[d] - positions[a], e2y = positions[d + 1] - positions[a + 1],
+						e2z = positions[d + 2] - positions[a + 2];
+				float nx = e1y * e2z - e1z * e2y, ny = e1z * e2x - e1x * e2z, nz = e1x * e2y - e1y * e2x;
+				float triangleArea = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+				areaX += nx;
+				areaY += ny;
+				areaZ += nz;
+				sumX += (positions[a] + positions[b] + positions[d]) / 3 * triangleArea;
+				sumY += (positions[a + 1] + positions[b + 1] + positions[d + 1]) / 3 * triangleArea;
+				sumZ += (positions[a + 2] + positions[b + 2] + positions[d + 2]) / 3 * triangleArea;
+				area += triangleArea;
+			}
+			float length = (float) Math.sqrt(areaX * areaX + areaY * areaY + areaZ * areaZ);
+			if (area > 0 && length > 0) {
+				keys[c] = ((sumX / area - centerX) * areaX + (sumY / area - centerY) * areaY
+						+ (sumZ / area - centerZ) * areaZ) / length;
+			}
+			order[c] = c;
+		}
+		Arrays.sort(order, (a, b) -> Float.compare(keys[b], keys[a]));
+
+		int[] result = new int[indices.length];
+		int out = 0;
+		for (int c : order) {
+			int from = clusterStarts[c] * 3;
+			int to = clusterStarts[c + 1] * 3;
+			System.arraycopy(indices, from, result, out, to - from);
+			out += to - from;
+		}
+		return result;
+	}
+
+	/**
+	 * Numbers the vertices in the order the indices first use them and
+	 * rewrites the indices to the new numbers.
+	 *
+	 * @return the new index of every old vertex, -1 for unused vertices
+	 */
+	public static int[] optimizeVertexFetch(int[] indices, int vertexCount) {
+		int[] remap = new int[vertexCount];
+		Arrays.fill(remap, -1);
+		int next = 0;
+		for (int i = 0; i < indices.length; i++) {
+			int v = indices[i];
+			if (remap[v] < 0) {
+				remap[v] = next++;
+			}
+			indices[i] = remap[v];
+		}
+		return remap;
+	}
+
+	/**
+	 * Moves the attributes of every vertex to its new index, dropping unused
+	 * vertices.
+	 */
+	public static float[] remapVertices(float[] data, int components, int[] remap, int newVertexCount) {
+		float[] result = new float[newVertexCount * components];
+		for (int v = 0; v < remap.length; v++) {
+			if (remap[v] >= 0) {
+				System.arraycopy(data, v * components, result, remap[v] * components, components);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Simulates a FIFO post transform cache.
+	 */
+	public static CacheStats computeStats(int[] indices, int vertexCount, int cacheSize) {
+		int[] cacheTime = new int[vertexCount];
+		Arrays.fill(cacheTime, Integer.MIN_VALUE / 2);
+		boolean[] used = new boolean[vertexCount];
+		int usedVertices = 0;
+		int misses = 0;
+		for (int v : indices) {
+			if (misses - cacheTime[v] >= cacheSize) {
+				cacheTime[v] = misses++;
+			}
+			if (!used[v]) {
+				used[v] = true;
+				usedVertices++;
+			}
+		}
+		int triangleCount = indices.length / 3;
+		return new CacheStats(triangleCount > 0 ? (float) misses / triangleCount : 0,
+				usedVertices > 0 ? (float) misses / usedVertices : 0);
+	}
+
+	/**
+	 * Vertex cache efficiency of an index buffer.
+	 */
+	public static class CacheStats {
+
+		private final float acmr;
+
+		private final float atvr;
+
+		public CacheStats(float acmr, float atvr) {
+			this.acmr = acmr;
+			this.atvr = atvr;
+		}
+
+		/**
+		 * @return transformed vertices per triangle, 0.5 at best for a
+		 *         regular grid and 3 at worst
+		 */
+		public float getAcmr() {
+			return acmr;
+		}
+
+		/**
+		 * @return transformed vertices per vertex, 1 at best
+		 */
+		public float getAtvr() {
+			return atvr;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("ACMR %.3f, ATVR %.3f", acmr, atvr);
+		}
+	}
+}
@@ -66,6 +66,18 @@ public class MouseInput {
         return displVec;
     }
 
+    /**
+     * @return the cursor position in window coordinates, from the top left
+     *         corner
+     */
+    public Vector2d getCurrentPos() {
+        return currentPos;
+    }
+
+    public boolean isInWindow() {
+        return inWindow;
+    }
+
     public void input(Window window) {
         displVec.x = 0;
         displVec.y = 0;
@@ -1,145 +1,75 @@
 package org.lwjglb.game.engine;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
-import org.joml.Vector3f;
 import org.lwjglb.game.engine.utils.Utils;
 
 public class OBJLoader {
 
 	public static Mesh loadMesh(String fileName) throws IOException {
-		List<String> lines = Utils.readAllLines(fileName);
-
-		List<Vector3f> vertices = new ArrayList<>();
-		List<Vector3f> normals = new ArrayList<>();
-		List<Face> faces = new ArrayList<>();
-
-		for (String line : lines) {
-			String[] tokens = line.split("\\s+");
-			switch (tokens[0]) {
-			case "v":
-				// Geometric vertex
-				Vector3f vec3f = new Vector3f(Float.parseFloat(tokens[1]), Float.parseFloat(tokens[2]),
-						Float.parseFloat(tokens[3]));
-				vertices.add(vec3f);
-				break;
-			case "vn":
-				// Vertex normal
-				Vector3f vec3fNorm = new Vector3f(Float.parseFloat(tokens[1]), Float.parseFloat(tokens[2]),
-						Float.parseFloat(tokens[3]));
-				normals.add(vec3fNorm);
-				break;
-			case "f":
-				Face face = new Face(tokens[1], tokens[2], tokens[3]);
-				faces.add(face);
-				break;
-			default:
-				// Ignore other lines
-				break;
-			}
+		MeshData data = loadMeshData(fileName);
+		try {
+			return new Mesh(data);
+		} finally {
+			data.free();
 		}
-		return reorderLists(vertices, normals, faces);
 	}
 
-	private static Mesh reorderLists(List<Vector3f> posList, List<Vector3f> normList, List<Face> facesList) {
-
-		List<Integer> indices = new ArrayList<>();
-		// Create position array in the order it has been declared
-		float[] posArr = new float[posList.size() * 3];
-		int i = 0;
-		for (Vector3f pos : posList) {
-			posArr[i * 3] = pos.x;
-			posArr[i * 3 + 1] = pos.y;
-			posArr[i * 3 + 2] = pos.z;
-			i++;
-		}
-		float[] normArr = new float[posList.size() * 3];
-
-		for (Face face : facesList) {
-			IdxGroup[] faceVertexIndices = face.getFaceVertexIndices();
-			for (IdxGroup indValue : faceVertexIndices) {
-				processFaceVertex(indValue, normList, indices, normArr);
-			}
-		}
-		int[] indicesArr = indices.stream().mapToInt((Integer v) -> v).toArray();
-
-		float[] colorArr = new float[posList.size() * 3];
-		Arrays.fill(colorArr, 1);
-		Mesh mesh = new Mesh(posArr, colorArr, normArr, indicesArr);
-		return mesh;
+	/**
+	 * Loads the mesh into buffers ready for upload, without a GL context.
+	 */
+	public static MeshData loadMeshData(String fileName) throws IOException {
+		return loadMeshData(fileName, false);
 	}
 
-	private static void processFaceVertex(IdxGroup indices, List<Vector3f> normList, List<Integer> indicesList,
-			float[] normArr) {
-
-		// Set index for vertex coordinates
-		int posIndex = indices.idxPos;
-		indicesList.add(posIndex);
-
-		if (indices.idxVecNormal != IdxGroup.NO_VALUE) {
-			// Reorder vector normals
-			Vector3f vecNorm = normList.get(indices.idxVecNormal);
-			normArr[posIndex * 3] = vecNorm.x;
-			normArr[posIndex * 3 + 1] = vecNorm.y;
-			normArr[posIndex * 3 + 2] = vecNorm.z;
-		}
+	/**
+	 * Loads the mesh into buffers ready for upload, without a GL context.
+	 *
+	 * @param optimizeOverdraw
+	 *            whether to sort the triangles to reduce overdraw, see
+	 *            {@link MeshOptimizer#setOptimizeOverdraw(boolean)}
+	 */
+	public static MeshData loadMeshData(String fileName, boolean optimizeOverdraw) throws IOException {
+		ObjParser parser = new ObjParser();
+		parser.parse(Utils.loadResourceBytes(fileName));
+		return createMeshData(parser, optimizeOverdraw);
 	}
 
-	protected static class Face {
-
-		/**
-		 * List of idxGroup groups for a face triangle (3 vertices per face).
-		 */
-		private IdxGroup[] idxGroups = new IdxGroup[3];
-
-		public Face(String v1, String v2, String v3) {
-			idxGroups = new IdxGroup[3];
-			// Parse the lines
-			idxGroups[0] = parseLine(v1);
-			idxGroups[1] = parseLine(v2);
-			idxGroups[2] = parseLine(v3);
+	/**
+	 * Builds one vertex per distinct position, texture coordinate and normal
+	 * of the face corners. Meshes have no texture coordinate attribute, but
+	 * corners differing only in texture coordinates still get their own
+	 * vertex so the seams are kept.
+	 */
+	private static MeshData createMeshData(ObjParser parser, boolean optimizeOverdraw) {
+		float[] positions = parser.getPositions();
+		float[] normals = parser.getNormals();
+		int[] cornerPositions = parser.getCornerPositions();
+		int[] cornerTexCoords = parser.getCornerTexCoords();
+		int[] cornerNormals = parser.getCornerNormals();
+
+		VertexWelder welder = new VertexWelder(parser.getPositionCount());
+		int[] indicesArr = new int[cornerPositions.length];
+		for (int i = 0; i < indicesArr.length; i++) {
+			indicesArr[i] = welder.add(cornerPositions[i], cornerTexCoords[i], cornerNormals[i]);
 		}
 
-		private IdxGroup parseLine(String line) {
-			IdxGroup idxGroup = new IdxGroup();
-
-			String[] lineTokens = line.split("/");
-			int length = lineTokens.length;
-			idxGroup.idxPos = Integer.parseInt(lineTokens[0]) - 1;
-			if (length > 1) {
-				// It can be empty if the obj does not define text coords
-				String textCoord = lineTokens[1];
-				idxGroup.idxTextCoord = textCoord.length() > 0 ? Integer.parseInt(textCoord) - 1 : IdxGroup.NO_VALUE;
-				if (length > 2) {
-					idxGroup.idxVecNormal = Integer.parseInt(lineTokens[2]) - 1;
-				}
+		int vertexCount = welder.getVertexCount();
+		int[] vertexPositions = welder.getPositions();
+		int[] vertexNormals = welder.getNormals();
+		float[] posArr = new float[vertexCount * 3];
+		float[] normArr = new float[vertexCount * 3];
+		for (int v = 0; v < vertexCount; v++) {
+			System.arraycopy(positions, vertexPositions[v] * 3, posArr, v * 3, 3);
+			if (vertexNormals[v] >= 0) {
+				System.arraycopy(normals, vertexNormals[v] * 3, normArr, v * 3, 3);
 			}
-
-			return idxGroup;
 		}
 
-		public IdxGroup[] getFaceVertexIndices() {
-			return idxGroups;
-		}
-	}
-
-	protected static class IdxGroup {
-
-		public static final int NO_VALUE = -1;
-
-		public int idxPos;
-
-		public int idxTextCoord;
-
-		public int idxVecNormal;
-
-		public IdxGroup() {
-			idxPos = NO_VALUE;
-			idxTextCoord = NO_VALUE;
-			idxVecNormal = NO_VALUE;
-		}
+		float[] colorArr = new float[posArr.length];
+		Arrays.fill(colorArr, 1);
+		return MeshOptimizer.optimizeForUpload(posArr, colorArr, normArr, indicesArr, optimizeOverdraw,
+				VertexFormat.PACKED);
 	}
 }
\ No newline at end of file
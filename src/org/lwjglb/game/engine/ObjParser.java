@@ -0,0 +1,361 @@
+package org.lwjglb.game.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Streaming parser for Wavefront OBJ geometry. It tokenizes the bytes of the
+ * file directly, parses numbers by hand and collects everything in growing
+ * primitive arrays, so no strings or boxed values are created per line.
+ * <p>
+ * Positions ({@code v}), texture coordinates ({@code vt}), normals
+ * ({@code vn}) and faces ({@code f}) are read, everything else is skipped.
+ * Faces with more than three corners are triangulated as a fan, and negative
+ * indices count back from the last element read. Each triangle corner keeps
+ * its own position, texture coordinate and normal index, -1 where the face
+ * gives none.
+ */
+public class ObjParser {
+
+	private static final double[] POWERS_OF_TEN = new double[39];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private float[] positions = new float[3 * 1024];
+	private float[] texCoords = new float[2 * 1024];
+	private float[] normals = new float[3 * 1024];
+	private int positionCount;
+	private int texCoordCount;
+	private int normalCount;
+
+	private int[] cornerPositions = new int[3 * 1024];
+	private int[] cornerTexCoords = new int[3 * 1024];
+	private int[] cornerNormals = new int[3 * 1024];
+	private int cornerCount;
+
+	// corners of the face being read
+	private int[] facePositions = new int[8];
+	private int[] faceTexCoords = new int[8];
+	private int[] faceNormals = new int[8];
+
+	private ByteBuffer data;
+	private int pos;
+	private int limit;
+	private int line;
+
+	/**
+	 * Parses a file by memory mapping it.
+	 */
+	public void parse(Path file) throws IOException {
+		MappedByteBuffer mapped;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		parse(mapped);
+	}
+
+	/**
+	 * Parses the bytes between position and limit of the buffer, adding to
+	 * whatever has been parsed before. The position of the buffer is not
+	 * changed.
+	 */
+	public void parse(ByteBuffer data) throws IOException {
+		this.data = data;
+		pos = data.position();
+		limit = data.limit();
+		line = 1;
+		try {
+			while (pos < limit) {
+				parseLine();
+			}
+		} finally {
+			this.data = null;
+		}
+	}
+
+	private void parseLine() throws IOException {
+		skipSpaces();
+		if (pos >= limit) {
+			return;
+		}
+		byte c = data.get(pos);
+		byte next = pos + 1 < limit ? data.get(pos + 1) : (byte) '\n';
+		if (c == 'v' && isSpace(next)) {
+			pos++;
+			positions = ensureCapacity(positions, positionCount * 3 + 3);
+			positions[positionCount * 3] = parseFloat();
+			positions[positionCount * 3 + 1] = parseFloat();
+			positions[positionCount * 3 + 2] = parseFloat();
+			positionCount++;
+		} else if (c == 'v' && next == 't') {
+			pos += 2;
+			texCoords = ensureCapacity(texCoords, texCoordCount * 2 + 2);
+			texCoords[texCoordCount * 2] = parseFloat();
+			// the v coordinate is optional for 1D textures
+			texCoords[texCoordCount * 2 + 1] = hasToken() ? parseFloat() : 0;
+			texCoordCount++;
+		} else if (c == 'v' && next == 'n') {
+			pos += 2;
+			normals = ensureCapacity(normals, normalCount * 3 + 3);
+			normals[normalCount * 3] = parseFloat();
+			normals[normalCount * 3 + 1] = parseFloat();
+			normals[normalCount * 3 + 2] = parseFloat();
+			normalCount++;
+		} else if (c == 'f' && isSpace(next)) {
+			pos++;
+			parseFace();
+		}
+		skipLine();
+	}
+
+	private void parseFace() throws IOException {
+		int count = 0;
+		while (hasToken()) {
+			if (count == facePositions.length) {
+				facePositions = Arrays.copyOf(facePositions, count * 2);
+				faceTexCoords = Arrays.copyOf(faceTexCoords, count * 2);
+				faceNormals = Arrays.copyOf(faceNormals, count * 2);
+			}
+			facePositions[count] = resolve(parseInt(), positionCount);
+			faceTexCoords[count] = -1;
+			faceNormals[count] = -1;
+			if (pos < limit && data.get(pos) == '/') {
+				pos++;
+				if (pos < limit && data.get(pos) != '/') {
+					faceTexCoords[count] = resolve(parseInt(), texCoordCount);
+				}
+				if (pos < limit && data.get(pos) == '/') {
+					pos++;
+					faceNormals[count] = resolve(parseInt(), normalCount);
+				}
+			}
+			count++;
+		}
+		if (count < 3) {
+			throw error("Face with " + count + " vertices");
+		}
+
+		int triangles = count - 2;
+		int needed = cornerCount + triangles * 3;
+		cornerPositions = ensureCapacity(cornerPositions, needed);
+		cornerTexCoords = ensureCapacity(cornerTexCoords, needed);
+		cornerNormals = ensureCapacity(cornerNormals, needed);
+		for (int i = 1; i <= triangles; i++) {
+			addCorner(0);
+			addCorner(i);
+			addCorner(i + 1);
+		}
+	}
+
+	private void addCorner(int faceCorner) {
+		cornerPositions[cornerCount] = facePositions[faceCorner];
+		cornerTexCoords[cornerCount] = faceTexCoords[faceCorner];
+		cornerNormals[cornerCount] = faceNormals[faceCorner];
+		cornerCount++;
+	}
+
+	/**
+	 * Turns a one based or negative relative index into a zero based one.
+	 */
+	private int resolve(int index, int count) throws IOException {
+		int resolved = index < 0 ? count + index : index - 1;
+		if (resolved < 0 || resolved >= count) {
+			throw error("Invalid index " + index);
+		}
+		return resolved;
+	}
+
+	private boolean hasToken() {
+		skipSpaces();
+		if (pos >= limit) {
+			return false;
+		}
+		byte c = data.get(pos);
+		return c != '\n' && c != '\r' && c != '#';
+	}
+
+	private void skipSpaces() {
+		while (pos < limit && isSpace(data.get(pos))) {
+			pos++;
+		}
+	}
+
+	private void skipLine() {
+		while (pos < limit) {
+			if (data.get(pos++) == '\n') {
+				line++;
+				return;
+			}
+		}
+	}
+
+	private static boolean isSpace(byte c) {
+		return c == ' ' || c == '\t';
+	}
+
+	private int parseInt() throws IOException {
+		boolean negative = false;
+		if (pos < limit && (data.get(pos) == '-' || data.get(pos) == '+')) {
+			negative = data.get(pos) == '-';
+			pos++;
+		}
+		int start = pos;
+		int value = 0;
+		while (pos < limit) {
+			int digit = data.get(pos) - '0';
+			if (digit < 0 || digit > 9) {
+				break;
+			}
+			value = value * 10 + digit;
+			pos++;
+		}
+		if (pos == start) {
+			throw error("Number expected");
+		}
+		return negative ? -value : value;
+	}
+
+	private float parseFloat() throws IOException {
+		skipSpaces();
+		int start = pos;
+		boolean negative = false;
+		if (pos < limit && (data.get(pos) == '-' || data.get(pos) == '+')) {
+			negative = data.get(pos) == '-';
+			pos++;
+		}
+		long mantissa = 0;
+		int exponent = 0;
+		int digits = 0;
+		boolean dot = false;
+		while (pos < limit) {
+			byte c = data.get(pos);
+			if (c >= '0' && c <= '9') {
+				if (mantissa < 100_000_000_000_000_000L) {
+					mantissa = mantissa * 10 + (c - '0');
+					if (dot) {
+						exponent--;
+					}
+				} else if (!dot) {
+					// digits beyond the precision of a long only scale
+					exponent++;
+				}
+				digits++;
+			} else if (c == '.' && !dot) {
+				dot = true;
+			} else {
+				break;
+			}
+			pos++;
+		}
+		if (digits == 0) {
+			return parseSpecialFloat(start);
+		}
+		if (pos < limit && (data.get(pos) == 'e' || data.get(pos) == 'E')) {
+			pos++;
+			exponent += parseInt();
+		}
+		double value = mantissa;
+		if (exponent < 0) {
+			value = -exponent < POWERS_OF_TEN.length ? value / POWERS_OF_TEN[-exponent] : value * Math.pow(10, exponent);
+		} else if (exponent > 0) {
+			value = exponent < POWERS_OF_TEN.length ? value * POWERS_OF_TEN[exponent] : value * Math.pow(10, exponent);
+		}
+		return (float) (negative ? -value : value);
+	}
+
+	/**
+	 * Falls back to {@link Float#parseFloat} for the rare spellings like
+	 * {@code nan} or {@code inf}.
+	 */
+	private float parseSpecialFloat(int start) throws IOException {
+		pos = start;
+		while (pos < limit && !isSpace(data.get(pos)) && data.get(pos) != '\n' && data.get(pos) != '\r') {
+			pos++;
+		}
+		byte[] token = new byte[pos - start];
+		for (int i = 0; i < token.length; i++) {
+			token[i] = data.get(start + i);
+		}
+		String text = new String(token, StandardCharsets.US_ASCII);
+		try {
+			return Float.parseFloat(text);
+		} catch (NumberFormatException e) {
+			throw error("Invalid number " + text);
+		}
+	}
+
+	private IOException error(String message) {
+		return new IOException(message + " in OBJ line " + line);
+	}
+
+	private static float[] ensureCapacity(float[] array, int capacity) {
+		return capacity <= array.length ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+	}
+
+	private static int[] ensureCapacity(int[] array, int capacity) {
+		return capacity <= array.length ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+	}
+
+	public int getPositionCount() {
+		return positionCount;
+	}
+
+	public int getTexCoordCount() {
+		return texCoordCount;
+	}
+
+	public int getNormalCount() {
+		return normalCount;
+	}
+
+	/**
+	 * @return the number of triangle corners, three per triangle
+	 */
+	public int getCornerCount() {
+		return cornerCount;
+	}
+
+	public float[] getPositions() {
+		return Arrays.copyOf(positions, positionCount * 3);
+	}
+
+	public float[] getTexCoords() {
+		return Arrays.copyOf(texCoords, texCoordCount * 2);
+	}
+
+	public float[] getNormals() {
+		return Arrays.copyOf(normals, normalCount * 3);
+	}
+
+	/**
+	 * @return the position index of every triangle corner
+	 */
+	public int[] getCornerPositions() {
+		return Arrays.copyOf(cornerPositions, cornerCount);
+	}
+
+	/**
+	 * @return the texture coordinate index of every triangle corner, or -1
+	 */
+	public int[] getCornerTexCoords() {
+		return Arrays.copyOf(cornerTexCoords, cornerCount);
+	}
+
+	/**
+	 * @return the normal index of every triangle corner, or -1
+	 */
+	public int[] getCornerNormals() {
+		return Arrays.copyOf(cornerNormals, cornerCount);
+	}
+}
@@ -0,0 +1,145 @@
+package org.lwjglb.game.engine;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.lwjglb.game.engine.lighting.ViewSpaceLights;
+
+/**
+ * The uniform buffers shared by all scene shaders: one {@code Frame} block
+ * written once per frame and one {@code Pass} block per render pass. Shaders
+ * declare them as
+ *
+ * <pre>
+ * layout (std140) uniform Frame
+ * {
+ *     mat4 projectionMatrix;
+ *     vec3 ambientLight;
+ *     float specularPower;
+ * };
+ * layout (std140) uniform Pass
+ * {
+ *     mat4 viewMatrix;
+ *     vec4 clipPlane;
+ *     PointLight pointLights[MAX_POINT_LIGHTS];
+ *     DirectionalLight directionalLight;
+ * };
+ * </pre>
+ *
+ * The lights in the pass block are in view coordinates and are copied from
+ * a {@link ViewSpaceLights} transformed for the camera of the pass.
+ */
+public class SceneBuffers {
+
+	public static final int FRAME_BINDING = 0;
+
+	public static final int PASS_BINDING = 1;
+
+	public static final int FRAME_BLOCK_SIZE = Std140.MAT4_SIZE + Std140.VEC4_SIZE;
+
+	public static final int POINT_LIGHT_SIZE = 48;
+
+	public static final int DIRECTIONAL_LIGHT_SIZE = 32;
+
+	private final int maxPointLights;
+
+	private final UniformBuffer frame;
+
+	private final UniformBuffer[] passes;
+
+	/**
+	 * @param maxPointLights
+	 *            length of the point light array declared in the shaders
+	 * @param passCount
+	 *            number of render passes per frame
+	 */
+	public SceneBuffers(int maxPointLights, int passCount) {
+		this.maxPointLights = maxPointLights;
+		frame = new UniformBuffer(FRAME_BLOCK_SIZE);
+		passes = new UniformBuffer[passCount];
+		for (int i = 0; i < passCount; i++) {
+			passes[i] = new UniformBuffer(getPassBlockSize(maxPointLights));
+		}
+	}
+
+	public static int getPassBlockSize(int maxPointLights) {
+		return Std140.MAT4_SIZE + Std140.VEC4_SIZE + maxPointLights * POINT_LIGHT_SIZE + DIRECTIONAL_LIGHT_SIZE;
+	}
+
+	/**
+	 * Binds the blocks of a shader to the binding points of the buffers.
+	 */
+	public static void bindBlocks(ShaderProgram shader) throws Exception {
+		shader.bindUniformBlock("Frame", FRAME_BINDING);
+		shader.bindUniformBlock("Pass", PASS_BINDING);
+	}
+
+	public void updateFrame(Matrix4f projectionMatrix, Vector3f ambientLight, float specularPower) {
+		writeFrame(frame.begin(), projectionMatrix, ambientLight, specularPower);
+		frame.upload();
+		frame.bind(FRAME_BINDING);
+	}
+
+	public void updatePass(int pass, Matrix4f viewMatrix, Vector4f clipPlane, ViewSpaceLights lights) {
+		writePass(passes[pass].begin(), viewMatrix, clipPlane, lights, maxPointLights);
+		passes[pass].upload();
+	}
+
+	/**
+	 * Makes the pass block of the given pass the one seen by the shaders.
+	 */
+	public void bindPass(int pass) {
+		passes[pass].bind(PASS_BINDING);
+	}
+
+	public static void writeFrame(Std140 out, Matrix4f projectionMatrix, Vector3f ambientLight,
+			float specularPower) {
+		out.putMat4(projectionMatrix);
+		out.putVec3(ambientLight);
+		out.putFloat(specularPower);
+	}
+
+	/**
+	 * Packs a pass block. Unused light slots get a zero intensity.
+	 *
+	 * @param lights
+	 *            the lights already transformed to the view coordinates of the
+	 *            pass
+	 */
+	public static void writePass(Std140 out, Matrix4f viewMatrix, Vector4f clipPlane, ViewSpaceLights lights,
+			int maxPointLights) {
+		out.putMat4(viewMatrix);
+		out.putVec4(clipPlane);
+
+		int numLights = Math.min(lights.getPointLightCount(), maxPointLights);
+		for (int i = 0; i < maxPointLights; i++) {
+			out.beginStruct();
+			if (i < numLights) {
+				out.putVec3(lights.getColourR(i), lights.getColourG(i), lights.getColourB(i));
+				out.putVec3(lights.getViewX(i), lights.getViewY(i), lights.getViewZ(i));
+				out.putFloat(lights.getIntensity(i));
+				out.beginStruct();
+				out.putFloat(lights.getConstant(i));
+				out.putFloat(lights.getLinear(i));
+				out.putFloat(lights.getExponent(i));
+				out.endStruct();
+			} else {
+				out.skip(POINT_LIGHT_SIZE);
+			}
+			out.endStruct();
+		}
+
+		out.beginStruct();
+		out.putVec3(lights.getDirectionalColour());
+		out.putVec3(lights.getDirectionalDirection());
+		out.putFloat(lights.getDirectionalIntensity());
+		out.endStruct();
+	}
+
+	public void cleanup() {
+		frame.cleanup();
+		for (UniformBuffer pass : passes) {
+			pass.cleanup();
+		}
+	}
+}
@@ -18,7 +18,7 @@ import static org.lwjgl.opengl.GL20.glGetUniformLocation;
 import static org.lwjgl.opengl.GL20.glLinkProgram;
 import static org.lwjgl.opengl.GL20.glShaderSource;
 import static org.lwjgl.opengl.GL20.glUniform1f;
-import static org.lwjgl.opengl.GL20.glUniform3fv;
+import static org.lwjgl.opengl.GL20.glUniform3f;
 import static org.lwjgl.opengl.GL20.glUniformMatrix4fv;
 import static org.lwjgl.opengl.GL20.glUseProgram;
 import static org.lwjgl.opengl.GL20.glValidateProgram;
@@ -32,10 +32,23 @@ import org.joml.Vector3f;
 import org.joml.Vector4f;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL31;
 import org.lwjglb.game.engine.lighting.DirectionalLight;
 import org.lwjglb.game.engine.lighting.PointLight;
 import org.lwjglb.game.engine.utils.Utils;
 
+/**
+ * A linked vertex and fragment shader.
+ * <p>
+ * Uniforms are looked up once when they are created. The {@code int} locations
+ * returned then can be passed to the {@code setUniform} overloads taking them,
+ * which do no string building or map lookups. The overloads taking uniform
+ * names are kept for code outside the render loop.
+ * <p>
+ * Matrices are uploaded through a scratch buffer owned by the program, so no
+ * uniform upload allocates. Like all GL calls they must be made from the
+ * thread owning the context.
+ */
 public class ShaderProgram {
 
     private final int programId;
@@ -46,6 +59,8 @@ public class ShaderProgram {
 
     private final Map<String, Integer> uniforms;
 
+    private final FloatBuffer matrixBuffer = BufferUtils.createFloatBuffer(16);
+
     public ShaderProgram(String vertexFile, String fragmentFile) throws Exception {
         programId = glCreateProgram();
         if (programId == 0) {
@@ -57,14 +72,39 @@ public class ShaderProgram {
         link();
     }
 
-    public void createUniform(String uniformName) throws Exception {
+    /**
+     * @return the location of the uniform
+     */
+    public int createUniform(String uniformName) throws Exception {
         int uniformLocation = glGetUniformLocation(programId, uniformName);
         if (uniformLocation < 0) {
             throw new Exception ("Could not find uniform: " + uniformName);
         }
         uniforms.put(uniformName, uniformLocation);
+        return uniformLocation;
+    }
+
+    /**
+     * @return the location of a uniform created before, or -1 if there is no
+     *         such uniform. Setting a uniform at -1 does nothing, so the
+     *         overloads taking names ignore unknown uniforms.
+     */
+    public int getUniform(String uniformName) {
+        Integer uniformLocation = uniforms.get(uniformName);
+        return uniformLocation != null ? uniformLocation : -1;
+    }
+
+    /**
+     * Binds a uniform block of this program to a uniform buffer binding point.
+     */
+    public void bindUniformBlock(String blockName, int binding) throws Exception {
+        int blockIndex = GL31.glGetUniformBlockIndex(programId, blockName);
+        if (blockIndex == GL31.GL_INVALID_INDEX) {
+            throw new Exception ("Could not find uniform block: " + blockName);
+        }
+        GL31.glUniformBlockBinding(programId, blockIndex, binding);
     }
-    
+
     public void createPointLightUniform(String uniformName) throws Exception {
         createUniform(uniformName + ".colour");
         createUniform(uniformName + ".position");
@@ -73,7 +113,7 @@ public class ShaderProgram {
         createUniform(uniformName + ".att.linear");
         createUniform(uniformName + ".att.exponent");
     }
-    
+
     public void setUniform(String uniformName, PointLight pointLight) {
         setUniform(uniformName + ".colour", pointLight.getColor() );
         setUniform(uniformName + ".position", pointLight.getPosition());
@@ -89,6 +129,7 @@ public class ShaderProgram {
         createUniform(uniformName + ".direction");
         createUniform(uniformName + ".intensity");
     }
+
     // ...
     public void setUniform(String uniformName, DirectionalLight dirLight) {
         setUniform(uniformName + ".colour", dirLight.getColor() );
@@ -107,21 +148,40 @@ public class ShaderProgram {
     }
     
     public void setUniform(String uniformName, float f) {
-		glUniform1f(uniforms.get(uniformName), f);
+		setUniform(getUniform(uniformName), f);
 	}
     public void setUniform(String uniformName, int i) {
-		GL20.glUniform1i(uniforms.get(uniformName), i);
+		setUniform(getUniform(uniformName), i);
 	}
 
 	public void setUniform(String uniformName, Vector3f position) {
-		glUniform3fv(uniforms.get(uniformName), new float[]{position.x, position.y, position.z});
+		setUniform(getUniform(uniformName), position);
 	}
     
     public void setUniform(String uniformName, Matrix4f value) {
-        // Dump the matrix into a float buffer
-        FloatBuffer fb = BufferUtils.createFloatBuffer(16);
-        value.get(fb);
-        glUniformMatrix4fv(uniforms.get(uniformName), false, fb);
+        setUniform(getUniform(uniformName), value);
+    }
+
+    public void setUniform(int location, float f) {
+        glUniform1f(location, f);
+    }
+
+    public void setUniform(int location, int i) {
+        GL20.glUniform1i(location, i);
+    }
+
+    public void setUniform(int location, Vector3f position) {
+        glUniform3f(location, position.x, position.y, position.z);
+    }
+
+    public void setUniform(int location, Matrix4f value) {
+        // Dump the matrix into the scratch buffer
+        value.get(matrixBuffer);
+        glUniformMatrix4fv(location, false, matrixBuffer);
+    }
+
+    public void setUniform(int location, Vector4f v) {
+        GL20.glUniform4f(location, v.x, v.y, v.z, v.w);
     }
 
     private void createVertexShader(String shaderCode) throws Exception {
@@ -184,13 +244,7 @@ public class ShaderProgram {
         }
     }
 
-	public void createPointLightListUniform(String string, int num) throws Exception {
-		for(int i = 0; i < num; i++){
-			createPointLightUniform(string + "[" + i + "]");
-		}
-	}
-
 	public void setUniform(String uniformName, Vector4f v) {
-		GL20.glUniform4f(uniforms.get(uniformName), v.x, v.y, v.z, v.w);
+		setUniform(getUniform(uniformName), v);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,147 @@
+package org.lwjglb.game.engine;
+
+import java.nio.ByteBuffer;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+/**
+ * Writes values into a buffer following the std140 layout rules of GLSL
+ * uniform blocks. Every put aligns the write position to the base alignment of
+ * the type first, padding with zeros.
+ * <p>
+ * Only the layout is computed here, no GL calls are made, so a block can be
+ * packed and inspected without a context.
+ */
+public class Std140 {
+
+	public static final int FLOAT_SIZE = 4;
+
+	public static final int VEC3_ALIGNMENT = 16;
+
+	public static final int VEC4_SIZE = 16;
+
+	public static final int MAT4_SIZE = 64;
+
+	/**
+	 * Structs and the elements of arrays are aligned like a vec4.
+	 */
+	public static final int STRUCT_ALIGNMENT = 16;
+
+	private final ByteBuffer buffer;
+
+	private int position;
+
+	/**
+	 * @param buffer
+	 *            the buffer to write into, in native byte order. Its position
+	 *            and limit are not used.
+	 */
+	public Std140(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * @return the offset the next value is written at, before alignment
+	 */
+	public int position() {
+		return position;
+	}
+
+	public Std140 position(int position) {
+		this.position = position;
+		return this;
+	}
+
+	/**
+	 * Pads with zeros up to the next multiple of the alignment.
+	 */
+	public Std140 align(int alignment) {
+		int aligned = (position + alignment - 1) / alignment * alignment;
+		return skip(aligned - position);
+	}
+
+	/**
+	 * Writes the given number of zero bytes.
+	 */
+	public Std140 skip(int bytes) {
+		for (int i = 0; i < bytes; i++) {
+			buffer.put(position++, (byte) 0);
+		}
+		return this;
+	}
+
+	public Std140 putFloat(float f) {
+		align(FLOAT_SIZE);
+		buffer.putFloat(position, f);
+		position += FLOAT_SIZE;
+		return this;
+	}
+
+	public Std140 putInt(int i) {
+		align(FLOAT_SIZE);
+		buffer.putInt(position, i);
+		position += FLOAT_SIZE;
+		return this;
+	}
+
+	/**
+	 * Writes a vec3. The next scalar fits into the fourth component.
+	 */
+	public Std140 putVec3(float x, float y, float z) {
+		align(VEC3_ALIGNMENT);
+		buffer.putFloat(position, x);
+		buffer.putFloat(position + 4, y);
+		buffer.putFloat(position + 8, z);
+		position += 3 * FLOAT_SIZE;
+		return this;
+	}
+
+	public Std140 putVec3(Vector3f v) {
+		return putVec3(v.x, v.y, v.z);
+	}
+
+	public Std140 putVec4(float x, float y, float z, float w) {
+		align(VEC4_SIZE);
+		buffer.putFloat(position, x);
+		buffer.putFloat(position + 4, y);
+		buffer.putFloat(position + 8, z);
+		buffer.putFloat(position + 12, w);
+		position += VEC4_SIZE;
+		return this;
+	}
+
+	public Std140 putVec4(Vector4f v) {
+		return putVec4(v.x, v.y, v.z, v.w);
+	}
+
+	/**
+	 * Writes a column major mat4.
+	 */
+	public Std140 putMat4(Matrix4f m) {
+		align(VEC4_SIZE);
+		m.get(position, buffer);
+		position += MAT4_SIZE;
+		return this;
+	}
+
+	/**
+	 * Starts a struct or an array element.
+	 */
+	public Std140 beginStruct() {
+		return align(STRUCT_ALIGNMENT);
+	}
+
+	/**
+	 * Ends a struct or an array element by padding it to a multiple of its
+	 * alignment.
+	 */
+	public Std140 endStruct() {
+		return align(STRUCT_ALIGNMENT);
+	}
+}
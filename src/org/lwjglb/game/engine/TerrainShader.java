@@ -5,18 +5,36 @@ public class TerrainShader extends ShaderProgram{
 	private static final String VERTEX_FILE = "/terrainVertex.vs";
 	private static final String FRAGMENT_FILE = "/terrainFragment.fs";
 
-	public TerrainShader(int maxPointLights) throws Exception {
+	private final int colorSeed;
+
+	private final int colorJitter;
+
+	public TerrainShader() throws Exception {
 		super(VERTEX_FILE, FRAGMENT_FILE);
 		
-		createUniform("projectionMatrix");
-		createUniform("modelViewMatrix");
 		createUniform("modelMatrix");
-		createUniform("ambientLight");
-		createUniform("specularPower");
 		createUniform("reflectance");
-		createPointLightListUniform("pointLights", maxPointLights);
-		createDirectionalLightUniform("directionalLight");
-		createUniform("clipPlane");
+		SceneBuffers.bindBlocks(this);
+		colorSeed = createUniform("colorSeed");
+		colorJitter = createUniform("colorJitter");
+	}
+
+	/**
+	 * Sets the seed of the per triangle brightness variation for the next
+	 * draw. The brightness is hashed from the seed and the index of the
+	 * triangle in the draw call.
+	 */
+	public void setColorSeed(int seed) {
+		setUniform(colorSeed, seed);
+	}
+
+	/**
+	 * @param jitter
+	 *            range of the per triangle brightness variation, 0 for meshes
+	 *            that carry their own variation in the vertex colors
+	 */
+	public void setColorJitter(float jitter) {
+		setUniform(colorJitter, jitter);
 	}
 	
 }
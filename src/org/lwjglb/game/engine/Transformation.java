@@ -1,52 +1,62 @@
 package org.lwjglb.game.engine;
 
 import org.joml.Matrix4f;
-import org.joml.Vector3f;
 import org.lwjglb.game.GameModel;
-import org.lwjglb.game.engine.lighting.PointLight;
 
+/**
+ * Computes the matrices of the render pipeline into reusable destination
+ * matrices. The matrices returned are owned by this instance, the camera or
+ * the model and are overwritten by the next call, so they must be used or
+ * copied before that.
+ */
 public class Transformation {
 
 	private final Matrix4f projectionMatrix;
-	private final Matrix4f viewMatrix;
-	private final Matrix4f worldMatrix;
+	private final Matrix4f viewProjectionMatrix;
+	private final Matrix4f modelViewMatrix;
+
+	// the parameters the projection matrix was last computed for
+	private float fov = Float.NaN;
+	private float width;
+	private float height;
+	private float zNear;
+	private float zFar;
 
 	public Transformation() {
-		worldMatrix = new Matrix4f();
 		projectionMatrix = new Matrix4f();
-		viewMatrix = new Matrix4f();
+		viewProjectionMatrix = new Matrix4f();
+		modelViewMatrix = new Matrix4f();
 	}
 
 	public final Matrix4f getProjectionMatrix(float fov, float width, float height, float zNear, float zFar) {
-		float aspectRatio = width / height;
-		projectionMatrix.identity();
-		projectionMatrix.perspective(fov, aspectRatio, zNear, zFar);
+		if (fov != this.fov || width != this.width || height != this.height || zNear != this.zNear
+				|| zFar != this.zFar) {
+			this.fov = fov;
+			this.width = width;
+			this.height = height;
+			this.zNear = zNear;
+			this.zFar = zFar;
+			float aspectRatio = width / height;
+			projectionMatrix.identity();
+			projectionMatrix.perspective(fov, aspectRatio, zNear, zFar);
+		}
 		return projectionMatrix;
 	}
 
 	public final Matrix4f getViewMatrix(Camera camera) {
-		Vector3f cameraPos = camera.getPosition();
-        Vector3f rotation = camera.getRotation();
-        
-        viewMatrix.identity();
-        // First do the rotation so camera rotates over its position
-        viewMatrix.rotate((float)Math.toRadians(rotation.x), new Vector3f(1, 0, 0))
-                .rotate((float)Math.toRadians(rotation.y), new Vector3f(0, 1, 0));
-        // Then do the translation
-        viewMatrix.translate(-cameraPos.x, -cameraPos.y, -cameraPos.z);
-        return viewMatrix;
+		return camera.getViewMatrix();
+	}
+
+	public Matrix4f getViewProjectionMatrix(Matrix4f projectionMatrix, Matrix4f viewMatrix) {
+		return projectionMatrix.mul(viewMatrix, viewProjectionMatrix);
 	}
 
 	public Matrix4f getModelViewMatrix(GameModel model, Matrix4f viewMatrix) {
-		Matrix4f viewCurr = new Matrix4f(viewMatrix);
-		return viewCurr.mul(getModelMatrix(model));
+		return viewMatrix.mul(model.getModelMatrix(), modelViewMatrix);
 	}
 
 	public Matrix4f getModelMatrix(GameModel model) {
-		worldMatrix.identity().translate(model.getPosition()).rotateX((float) Math.toRadians(model.getRotation().x))
-		.rotateY((float) Math.toRadians(model.getRotation().y))
-		.rotateZ((float) Math.toRadians(model.getRotation().z)).scale(model.getScale());
-		return worldMatrix;
+		return model.getModelMatrix();
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,72 @@
+package org.lwjglb.game.engine;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+
+/**
+ * A uniform buffer object together with a CPU side copy of its contents. The
+ * contents are packed with {@link #begin()} and sent to the GPU with
+ * {@link #upload()}.
+ */
+public class UniformBuffer {
+
+	private final int bufferId;
+
+	private final int size;
+
+	private final ByteBuffer data;
+
+	private final Std140 writer;
+
+	/**
+	 * @param size
+	 *            size of the uniform block in bytes
+	 */
+	public UniformBuffer(int size) {
+		this.size = size;
+		data = BufferUtils.createByteBuffer(size);
+		writer = new Std140(data);
+
+		bufferId = GL15.glGenBuffers();
+		GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, bufferId);
+		GL15.glBufferData(GL31.GL_UNIFORM_BUFFER, size, GL15.GL_DYNAMIC_DRAW);
+		GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, 0);
+	}
+
+	/**
+	 * @return the writer for the CPU side copy, positioned at the start
+	 */
+	public Std140 begin() {
+		return writer.position(0);
+	}
+
+	/**
+	 * Sends the CPU side copy to the GPU.
+	 */
+	public void upload() {
+		data.clear();
+		GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, bufferId);
+		GL15.glBufferSubData(GL31.GL_UNIFORM_BUFFER, 0, data);
+		GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, 0);
+	}
+
+	/**
+	 * Makes this buffer the source of the uniform blocks bound to the given
+	 * binding point.
+	 */
+	public void bind(int binding) {
+		GL30.glBindBufferBase(GL31.GL_UNIFORM_BUFFER, binding, bufferId);
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public void cleanup() {
+		GL15.glDeleteBuffers(bufferId);
+	}
+}
@@ -0,0 +1,244 @@
+package org.lwjglb.game.engine;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL33;
+
+/**
+ * Layout of an interleaved vertex: position, optional normal and color, each
+ * either as three floats or in a compact encoding.
+ * <ul>
+ * <li>Positions can be half floats, 8 bytes instead of 12.</li>
+ * <li>Normals can be packed as {@code INT_2_10_10_10_REV}, 4 bytes instead of
+ * 12.</li>
+ * <li>Colors can be normalized unsigned bytes, 4 bytes instead of 12.</li>
+ * </ul>
+ * The packing routines are static and do not need a GL context.
+ */
+public class VertexFormat {
+
+	/**
+	 * Everything as floats.
+	 */
+	public static final VertexFormat FLOAT = new VertexFormat(false, false, false);
+
+	/**
+	 * Float positions, packed normals and byte colors, 20 bytes per vertex.
+	 */
+	public static final VertexFormat PACKED = new VertexFormat(false, true, true);
+
+	/**
+	 * Half float positions, packed normals and byte colors, 16 bytes per
+	 * vertex. Only for meshes whose coordinates are small compared to the
+	 * distance between their vertices, see {@link #isHalfPrecise(float, float)}.
+	 */
+	public static final VertexFormat COMPACT = new VertexFormat(true, true, true);
+
+	private static final int POSITION = 0;
+	private static final int COLOR = 1;
+	private static final int NORMAL = 2;
+
+	private final boolean halfPositions;
+	private final boolean packedNormals;
+	private final boolean byteColors;
+
+	public VertexFormat(boolean halfPositions, boolean packedNormals, boolean byteColors) {
+		this.halfPositions = halfPositions;
+		this.packedNormals = packedNormals;
+		this.byteColors = byteColors;
+	}
+
+	public boolean hasHalfPositions() {
+		return halfPositions;
+	}
+
+	public boolean hasPackedNormals() {
+		return packedNormals;
+	}
+
+	public boolean hasByteColors() {
+		return byteColors;
+	}
+
+	private int getPositionSize() {
+		// three halves padded to four byte alignment
+		return halfPositions ? 8 : 12;
+	}
+
+	private int getNormalSize() {
+		return packedNormals ? 4 : 12;
+	}
+
+	private int getColorSize() {
+		return byteColors ? 4 : 12;
+	}
+
+	/**
+	 * @return the size of one vertex in bytes
+	 */
+	public int getStride(boolean hasNormals) {
+		return getPositionSize() + (hasNormals ? getNormalSize() : 0) + getColorSize();
+	}
+
+	/**
+	 * Writes the vertices interleaved at the position of the buffer, which
+	 * must be in native byte order.
+	 *
+	 * @param normals
+	 *            the normals, or {@code null} if there are none
+	 */
+	public void write(ByteBuffer out, float[] positions, float[] colors, float[] normals) {
+		int vertexCount = positions.length / 3;
+		for (int i = 0; i < vertexCount; i++) {
+			int j = i * 3;
+			if (halfPositions) {
+				out.putShort(toHalf(positions[j])).putShort(toHalf(positions[j + 1]))
+						.putShort(toHalf(positions[j + 2])).putShort((short) 0);
+			} else {
+				out.putFloat(positions[j]).putFloat(positions[j + 1]).putFloat(positions[j + 2]);
+			}
+			if (normals != null) {
+				if (packedNormals) {
+					out.putInt(packNormal(normals[j], normals[j + 1], normals[j + 2]));
+				} else {
+					out.putFloat(normals[j]).putFloat(normals[j + 1]).putFloat(normals[j + 2]);
+				}
+			}
+			if (byteColors) {
+				out.put(toUnsignedByte(colors[j])).put(toUnsignedByte(colors[j + 1]))
+						.put(toUnsignedByte(colors[j + 2])).put((byte) 0xff);
+			} else {
+				out.putFloat(colors[j]).putFloat(colors[j + 1]).putFloat(colors[j + 2]);
+			}
+		}
+	}
+
+	/**
+	 * Points and enables the attributes of the bound VAO at the bound array
+	 * buffer.
+	 */
+	public void setupAttributes(boolean hasNormals) {
+		int stride = getStride(hasNormals);
+		int offset = 0;
+		GL20.glVertexAttribPointer(POSITION, 3, halfPositions ? GL30.GL_HALF_FLOAT : GL11.GL_FLOAT, false, stride,
+				offset);
+		GL20.glEnableVertexAttribArray(POSITION);
+		offset += getPositionSize();
+		if (hasNormals) {
+			if (packedNormals) {
+				GL20.glVertexAttribPointer(NORMAL, 4, GL33.GL_INT_2_10_10_10_REV, true, stride, offset);
+			} else {
+				GL20.glVertexAttribPointer(NORMAL, 3, GL11.GL_FLOAT, false, stride, offset);
+			}
+			GL20.glEnableVertexAttribArray(NORMAL);
+			offset += getNormalSize();
+		}
+		if (byteColors) {
+			GL20.glVertexAttribPointer(COLOR, 4, GL11.GL_UNSIGNED_BYTE, true, stride, offset);
+		} else {
+			GL20.glVertexAttribPointer(COLOR, 3, GL11.GL_FLOAT, false, stride, offset);
+		}
+		GL20.glEnableVertexAttribArray(COLOR);
+	}
+
+	/**
+	 * Below this many half float steps between two vertices, positions are
+	 * too coarse for {@link #COMPACT}.
+	 */
+	private static final int MIN_HALF_STEPS = 16;
+
+	/**
+	 * @param maxAbs
+	 *            largest absolute value of a position coordinate
+	 * @param spacing
+	 *            smallest distance between two vertices along an axis
+	 * @return whether half floats resolve the spacing well everywhere up to
+	 *         {@code maxAbs}, so the positions may be stored as halves
+	 */
+	public static boolean isHalfPrecise(float maxAbs, float spacing) {
+		// a half has 13 fewer mantissa bits than a float
+		float halfStep = Math.ulp(Math.max(maxAbs, 0x1p-14f)) * 0x1p13f;
+		return maxAbs < 65504 && halfStep * MIN_HALF_STEPS <= spacing;
+	}
+
+	/**
+	 * Converts to a half float, rounding to the nearest value and to the
+	 * even one on ties. Values too large for a half become infinite.
+	 */
+	public static short toHalf(float f) {
+		int bits = Float.floatToIntBits(f);
+		int sign = bits >>> 16 & 0x8000;
+		int abs = bits & 0x7fffffff;
+		if (abs > 0x7f800000) {
+			// NaN
+			return (short) (sign | 0x7e00);
+		}
+		// add just under half of the dropped bits, plus one if the kept part
+		// is odd, so that only ties with an odd kept part round up
+		int rounded = abs + 0xfff + (abs >>> 13 & 1);
+		if (rounded >= 0x47800000) {
+			// too large, infinite, or rounds up past the largest half
+			return (short) (sign | 0x7c00);
+		}
+		if (rounded >= 0x38800000) {
+			// normal half
+			return (short) (sign | rounded - 0x38000000 >>> 13);
+		}
+		if (abs <= 0x33000000) {
+			// at most half the smallest subnormal half
+			return (short) sign;
+		}
+		// subnormal half
+		int exponent = abs >>> 23;
+		int mantissa = abs & 0x7fffff | 0x800000;
+		int shift = 126 - exponent;
+		return (short) (sign | mantissa + (1 << shift - 1) - 1 + (mantissa >>> shift & 1) >>> shift);
+	}
+
+	public static float fromHalf(short half) {
+		int h = half & 0xffff;
+		int sign = (h & 0x8000) << 16;
+		int exponent = h >>> 10 & 0x1f;
+		int mantissa = h & 0x3ff;
+		if (exponent == 0x1f) {
+			return Float.intBitsToFloat(sign | 0x7f800000 | mantissa << 13);
+		}
+		if (exponent == 0) {
+			float subnormal = mantissa * 0x1p-24f;
+			return sign != 0 ? -subnormal : subnormal;
+		}
+		return Float.intBitsToFloat(sign | exponent + 112 << 23 | mantissa << 13);
+	}
+
+	/**
+	 * Packs a unit vector into the x, y and z fields of a signed normalized
+	 * {@code INT_2_10_10_10_REV}. The w field is zero.
+	 */
+	public static int packNormal(float x, float y, float z) {
+		return toSnorm10(x) | toSnorm10(y) << 10 | toSnorm10(z) << 20;
+	}
+
+	private static int toSnorm10(float f) {
+		return Math.round(Math.max(-1, Math.min(1, f)) * 511) & 0x3ff;
+	}
+
+	/**
+	 * @param component
+	 *            0 for x, 1 for y, 2 for z
+	 */
+	public static float unpackNormal(int packed, int component) {
+		int value = packed << 22 - component * 10 >> 22;
+		return Math.max(-1, value / 511f);
+	}
+
+	public static byte toUnsignedByte(float f) {
+		return (byte) Math.round(Math.max(0, Math.min(1, f)) * 255);
+	}
+
+	public static float fromUnsignedByte(byte b) {
+		return (b & 0xff) / 255f;
+	}
+}
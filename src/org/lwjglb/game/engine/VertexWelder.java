@@ -0,0 +1,127 @@
+package org.lwjglb.game.engine;
+
+import java.util.Arrays;
+
+/**
+ * Assigns one vertex index per distinct combination of position, texture
+ * coordinate and normal index, as OBJ faces reference them. A position used
+ * with different normals, at a hard edge for example, becomes separate
+ * vertices, while repeated combinations share a vertex.
+ * <p>
+ * The combinations are kept in an open addressing hash table of primitive
+ * arrays with linear probing, so adding a corner allocates nothing unless
+ * the table has to grow.
+ */
+public class VertexWelder {
+
+	private static final int EMPTY = -1;
+
+	private int[] table;
+
+	private int mask;
+
+	private int[] positions;
+	private int[] texCoords;
+	private int[] normals;
+
+	private int vertexCount;
+
+	/**
+	 * @param expectedVertices
+	 *            the number of vertices to size the table for, it grows as
+	 *            needed
+	 */
+	public VertexWelder(int expectedVertices) {
+		int capacity = Math.max(16, Integer.highestOneBit(Math.max(expectedVertices, 1) * 2 - 1) * 2);
+		table = new int[capacity];
+		Arrays.fill(table, EMPTY);
+		mask = capacity - 1;
+		positions = new int[Math.max(expectedVertices, 16)];
+		texCoords = new int[positions.length];
+		normals = new int[positions.length];
+	}
+
+	/**
+	 * @param texCoord
+	 *            the texture coordinate index, or -1
+	 * @param normal
+	 *            the normal index, or -1
+	 * @return the index of the vertex with this combination, a new one if it
+	 *         was not seen before
+	 */
+	public int add(int position, int texCoord, int normal) {
+		int slot = hash(position, texCoord, normal) & mask;
+		while (true) {
+			int vertex = table[slot];
+			if (vertex == EMPTY) {
+				break;
+			}
+			if (positions[vertex] == position && texCoords[vertex] == texCoord && normals[vertex] == normal) {
+				return vertex;
+			}
+			slot = slot + 1 & mask;
+		}
+
+		if (vertexCount == positions.length) {
+			int capacity = vertexCount * 2;
+			positions = Arrays.copyOf(positions, capacity);
+			texCoords = Arrays.copyOf(texCoords, capacity);
+			normals = Arrays.copyOf(normals, capacity);
+		}
+		int vertex = vertexCount++;
+		positions[vertex] = position;
+		texCoords[vertex] = texCoord;
+		normals[vertex] = normal;
+		table[slot] = vertex;
+		if (vertexCount * 2 > table.length) {
+			// keep the load factor at most one half
+			rehash(table.length * 2);
+		}
+		return vertex;
+	}
+
+	private void rehash(int capacity) {
+		table = new int[capacity];
+		Arrays.fill(table, EMPTY);
+		mask = capacity - 1;
+		for (int vertex = 0; vertex < vertexCount; vertex++) {
+			int slot = hash(positions[vertex], texCoords[vertex], normals[vertex]) & mask;
+			while (table[slot] != EMPTY) {
+				slot = slot + 1 & mask;
+			}
+			table[slot] = vertex;
+		}
+	}
+
+	private static int hash(int position, int texCoord, int normal) {
+		int h = position * 0x9e3779b1;
+		h = (h ^ texCoord) * 0x85ebca6b;
+		h = (h ^ normal) * 0xc2b2ae35;
+		return h ^ h >>> 16;
+	}
+
+	public int getVertexCount() {
+		return vertexCount;
+	}
+
+	/**
+	 * @return the position index of every vertex
+	 */
+	public int[] getPositions() {
+		return Arrays.copyOf(positions, vertexCount);
+	}
+
+	/**
+	 * @return the texture coordinate index of every vertex, or -1
+	 */
+	public int[] getTexCoords() {
+		return Arrays.copyOf(texCoords, vertexCount);
+	}
+
+	/**
+	 * @return the normal index of every vertex, or -1
+	 */
+	public int[] getNormals() {
+		return Arrays.copyOf(normals, vertexCount);
+	}
+}
@@ -0,0 +1,164 @@
+package org.lwjglb.game.engine.lighting;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+/**
+ * The lights of a frame as a structure of arrays, preallocated for a fixed
+ * number of point lights.
+ * <p>
+ * {@link #set} copies the world space lights once per frame, and
+ * {@link #transform} writes their view space positions and direction into
+ * the same arrays once per camera, so no light objects are copied per pass or
+ * per shader.
+ */
+public class ViewSpaceLights {
+
+	private final int capacity;
+
+	private int pointLightCount;
+
+	private final float[] colourR, colourG, colourB;
+
+	private final float[] worldX, worldY, worldZ;
+
+	private final float[] viewX, viewY, viewZ;
+
+	private final float[] intensity;
+
+	private final float[] constant, linear, exponent;
+
+	private final Vector3f directionalColour = new Vector3f();
+
+	private final Vector3f directionalWorld = new Vector3f();
+
+	private final Vector3f directionalView = new Vector3f();
+
+	private float directionalIntensity;
+
+	/**
+	 * @param capacity
+	 *            maximum number of point lights, any further lights are
+	 *            ignored
+	 */
+	public ViewSpaceLights(int capacity) {
+		this.capacity = capacity;
+		colourR = new float[capacity];
+		colourG = new float[capacity];
+		colourB = new float[capacity];
+		worldX = new float[capacity];
+		worldY = new float[capacity];
+		worldZ = new float[capacity];
+		viewX = new float[capacity];
+		viewY = new float[capacity];
+		viewZ = new float[capacity];
+		intensity = new float[capacity];
+		constant = new float[capacity];
+		linear = new float[capacity];
+		exponent = new float[capacity];
+	}
+
+	/**
+	 * Copies the world space lights of the frame.
+	 */
+	public void set(PointLight[] pointLights, DirectionalLight directionalLight) {
+		pointLightCount = pointLights != null ? Math.min(pointLights.length, capacity) : 0;
+		for (int i = 0; i < pointLightCount; i++) {
+			PointLight light = pointLights[i];
+			Vector3f colour = light.getColor();
+			Vector3f position = light.getPosition();
+			PointLight.Attenuation att = light.getAttenuation();
+			colourR[i] = colour.x;
+			colourG[i] = colour.y;
+			colourB[i] = colour.z;
+			worldX[i] = position.x;
+			worldY[i] = position.y;
+			worldZ[i] = position.z;
+			intensity[i] = light.getIntensity();
+			constant[i] = att.getConstant();
+			linear[i] = att.getLinear();
+			exponent[i] = att.getExponent();
+		}
+		directionalColour.set(directionalLight.getColor());
+		directionalWorld.set(directionalLight.getDirection());
+		directionalIntensity = directionalLight.getIntensity();
+	}
+
+	/**
+	 * Transforms the positions and the direction to view coordinates of the
+	 * given camera.
+	 */
+	public void transform(Matrix4f viewMatrix) {
+		Matrix4f m = viewMatrix;
+		for (int i = 0; i < pointLightCount; i++) {
+			float x = worldX[i], y = worldY[i], z = worldZ[i];
+			viewX[i] = m.m00 * x + m.m10 * y + m.m20 * z + m.m30;
+			viewY[i] = m.m01 * x + m.m11 * y + m.m21 * z + m.m31;
+			viewZ[i] = m.m02 * x + m.m12 * y + m.m22 * z + m.m32;
+		}
+		m.transformDirection(directionalWorld, directionalView);
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getPointLightCount() {
+		return pointLightCount;
+	}
+
+	public float getColourR(int i) {
+		return colourR[i];
+	}
+
+	public float getColourG(int i) {
+		return colourG[i];
+	}
+
+	public float getColourB(int i) {
+		return colourB[i];
+	}
+
+	public float getViewX(int i) {
+		return viewX[i];
+	}
+
+	public float getViewY(int i) {
+		return viewY[i];
+	}
+
+	public float getViewZ(int i) {
+		return viewZ[i];
+	}
+
+	public float getIntensity(int i) {
+		return intensity[i];
+	}
+
+	public float getConstant(int i) {
+		return constant[i];
+	}
+
+	public float getLinear(int i) {
+		return linear[i];
+	}
+
+	public float getExponent(int i) {
+		return exponent[i];
+	}
+
+	public Vector3f getDirectionalColour() {
+		return directionalColour;
+	}
+
+	/**
+	 * @return the direction of the directional light in view coordinates
+	 */
+	public Vector3f getDirectionalDirection() {
+		return directionalView;
+	}
+
+	public float getDirectionalIntensity() {
+		return directionalIntensity;
+	}
+}
@@ -0,0 +1,92 @@
+package org.lwjglb.game.engine.noise;
+
+/**
+ * The points a tile is evaluated at, either the regular grid of the tile or
+ * the grid moved by a {@link DomainWarp}. Also holds the scratch buffers the
+ * nodes evaluated at these points share.
+ */
+class Coordinates {
+
+	final float[] x;
+	final float[] z;
+
+	/**
+	 * Noise of one octave, for the generator nodes.
+	 */
+	final float[] octave;
+
+	/**
+	 * Per point weights, for the generator nodes.
+	 */
+	final float[] weight;
+
+	private final float[] scaledX;
+	private final float[] scaledZ;
+
+	int count;
+
+	boolean regular;
+	float x0;
+	float z0;
+	float dx;
+	float dz;
+	int width;
+	int height;
+
+	Coordinates(int maxPoints) {
+		x = new float[maxPoints];
+		z = new float[maxPoints];
+		octave = new float[maxPoints];
+		weight = new float[maxPoints];
+		scaledX = new float[maxPoints];
+		scaledZ = new float[maxPoints];
+	}
+
+	void setGrid(float x0, float z0, float dx, float dz, int width, int height) {
+		this.regular = true;
+		this.x0 = x0;
+		this.z0 = z0;
+		this.dx = dx;
+		this.dz = dz;
+		this.width = width;
+		this.height = height;
+		count = width * height;
+		int i = 0;
+		for (int row = 0; row < height; row++) {
+			float rowZ = z0 + row * dz;
+			for (int column = 0; column < width; column++) {
+				x[i] = x0 + column * dx;
+				z[i++] = rowZ;
+			}
+		}
+	}
+
+	/**
+	 * Moves every point of {@code source} by the offsets, scaled by
+	 * {@code amplitude}.
+	 */
+	void setWarped(Coordinates source, float[] offsetX, float[] offsetZ, float amplitude) {
+		regular = false;
+		count = source.count;
+		for (int i = 0; i < count; i++) {
+			x[i] = source.x[i] + offsetX[i] * amplitude;
+			z[i] = source.z[i] + offsetZ[i] * amplitude;
+		}
+	}
+
+	/**
+	 * Samples the source at every point scaled by {@code frequency}, using
+	 * the grid path of the source where possible.
+	 */
+	void sample(NoiseSource source, float frequency, float[] out) {
+		if (regular) {
+			source.fill(out, 0, x0 * frequency, z0 * frequency, dx * frequency, dz * frequency, width, height);
+		} else {
+			for (int i = 0; i < count; i++) {
+				scaledX[i] = x[i] * frequency;
+				scaledZ[i] = z[i] * frequency;
+			}
+			source.getNoise(scaledX, scaledZ, count, out);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package org.lwjglb.game.engine.noise;
+
+/**
+ * Evaluates its input at points moved by two other nodes:
+ * {@code input(x + amplitude * warpX(x, z), z + amplitude * warpZ(x, z))}.
+ * This bends the shapes of the input into folds and swirls.
+ */
+public class DomainWarp extends NoiseNode {
+
+	private final NoiseNode warpX;
+
+	private final NoiseNode warpZ;
+
+	private float amplitude;
+
+	public DomainWarp(NoiseNode input, NoiseNode warpX, NoiseNode warpZ, float amplitude) {
+		super(input);
+		this.warpX = warpX;
+		this.warpZ = warpZ;
+		this.amplitude = amplitude;
+	}
+
+	public void setAmplitude(float amplitude) {
+		this.amplitude = amplitude;
+		changed();
+	}
+
+	NoiseNode getWarpX() {
+		return warpX;
+	}
+
+	NoiseNode getWarpZ() {
+		return warpZ;
+	}
+
+	float getAmplitude() {
+		return amplitude;
+	}
+
+	/**
+	 * The evaluator has already evaluated the input at the warped points.
+	 */
+	@Override
+	void evaluate(Coordinates points, float[][] inputs, float[] out) {
+		System.arraycopy(inputs[0], 0, out, 0, points.count);
+	}
+}
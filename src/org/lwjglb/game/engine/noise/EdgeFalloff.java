@@ -0,0 +1,72 @@
+package org.lwjglb.game.engine.noise;
+
+/**
+ * Lowers the values of its input towards the edge of a circle, turning a
+ * terrain into an island. Beyond {@code start} times the radius from the
+ * center, {@code (d - start) * strength * d} is subtracted, where {@code d}
+ * is the distance from the center in radii.
+ */
+public class EdgeFalloff extends NoiseNode {
+
+	private float centerX;
+
+	private float centerZ;
+
+	private float radius;
+
+	private float start;
+
+	private float strength;
+
+	/**
+	 * The falloff of the island terrain, starting at 0.65 radii.
+	 */
+	public EdgeFalloff(NoiseNode input, float centerX, float centerZ, float radius) {
+		this(input, centerX, centerZ, radius, .65f, .45f);
+	}
+
+	public EdgeFalloff(NoiseNode input, float centerX, float centerZ, float radius, float start, float strength) {
+		super(input);
+		this.centerX = centerX;
+		this.centerZ = centerZ;
+		this.radius = radius;
+		this.start = start;
+		this.strength = strength;
+	}
+
+	public void setCircle(float centerX, float centerZ, float radius) {
+		this.centerX = centerX;
+		this.centerZ = centerZ;
+		this.radius = radius;
+		changed();
+	}
+
+	public void setStart(float start) {
+		this.start = start;
+		changed();
+	}
+
+	public void setStrength(float strength) {
+		this.strength = strength;
+		changed();
+	}
+
+	@Override
+	void evaluate(Coordinates points, float[][] inputs, float[] out) {
+		float[] in = inputs[0];
+		float[] x = points.x;
+		float[] z = points.z;
+		int count = points.count;
+		float inverseRadius = 1 / radius;
+		for (int p = 0; p < count; p++) {
+			float px = (x[p] - centerX) * inverseRadius;
+			float pz = (z[p] - centerZ) * inverseRadius;
+			float dist = (float) Math.sqrt(px * px + pz * pz);
+			float value = in[p];
+			if (dist > start) {
+				value -= (dist - start) * (strength * dist);
+			}
+			out[p] = value;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package org.lwjglb.game.engine.noise;
+
+import java.util.Arrays;
+
+/**
+ * Fractional Brownian motion: octaves of a {@link NoiseSource}, each
+ * {@code lacunarity} times the frequency and {@code gain} times the
+ * amplitude of the previous one. The sum is normalized by the total
+ * amplitude, so it keeps the range of the source.
+ */
+public class Fbm extends NoiseNode {
+
+	private final NoiseSource source;
+
+	private int octaves;
+
+	private float frequency;
+
+	private float lacunarity;
+
+	private float gain;
+
+	/**
+	 * Octaves doubling the frequency and halving the amplitude.
+	 */
+	public Fbm(NoiseSource source, int octaves, float frequency) {
+		this(source, octaves, frequency, 2, .5f);
+	}
+
+	public Fbm(NoiseSource source, int octaves, float frequency, float lacunarity, float gain) {
+		this.source = source;
+		this.octaves = octaves;
+		this.frequency = frequency;
+		this.lacunarity = lacunarity;
+		this.gain = gain;
+	}
+
+	public void setOctaves(int octaves) {
+		this.octaves = octaves;
+		changed();
+	}
+
+	public void setFrequency(float frequency) {
+		this.frequency = frequency;
+		changed();
+	}
+
+	public void setLacunarity(float lacunarity) {
+		this.lacunarity = lacunarity;
+		changed();
+	}
+
+	public void setGain(float gain) {
+		this.gain = gain;
+		changed();
+	}
+
+	@Override
+	void evaluate(Coordinates points, float[][] inputs, float[] out) {
+		int count = points.count;
+		float[] octave = points.octave;
+		float amplitude = 1;
+		float total = 0;
+		float f = frequency;
+		for (int i = 0; i < octaves; i++) {
+			points.sample(source, f, i == 0 ? out : octave);
+			if (i > 0) {
+				for (int p = 0; p < count; p++) {
+					out[p] += amplitude * octave[p];
+				}
+			}
+			total += amplitude;
+			amplitude *= gain;
+			f *= lacunarity;
+		}
+		if (total == 0) {
+			Arrays.fill(out, 0, count, 0f);
+			return;
+		}
+		float scale = 1 / total;
+		for (int p = 0; p < count; p++) {
+			out[p] *= scale;
+		}
+	}
+}
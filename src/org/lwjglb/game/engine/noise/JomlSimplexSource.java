@@ -0,0 +1,34 @@
+package org.lwjglb.game.engine.noise;
+
+import org.joml.SimplexNoise;
+
+/**
+ * Single octave noise from {@link SimplexNoise org.joml.SimplexNoise}. It has
+ * no seed, different terrains are obtained by offsetting the coordinates.
+ */
+public class JomlSimplexSource implements NoiseSource {
+
+	private final float offsetX;
+
+	private final float offsetZ;
+
+	public JomlSimplexSource() {
+		this(0, 0);
+	}
+
+	/**
+	 * @param offsetX
+	 *            added to x before sampling
+	 * @param offsetZ
+	 *            added to z before sampling
+	 */
+	public JomlSimplexSource(float offsetX, float offsetZ) {
+		this.offsetX = offsetX;
+		this.offsetZ = offsetZ;
+	}
+
+	@Override
+	public float getNoise(float x, float z) {
+		return SimplexNoise.noise(x + offsetX, z + offsetZ);
+	}
+}
@@ -0,0 +1,194 @@
+package org.lwjglb.game.engine.noise;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a noise graph over tiles of a regular grid. The graph is compiled
+ * once into a flat list of operations in dependency order, each with its own
+ * preallocated value buffer, so filling a tile allocates nothing.
+ * <p>
+ * Every operation keeps the values of the last tile it computed. When the
+ * same tile is filled again, only the nodes that changed since, and the
+ * nodes depending on them, are recomputed. Adding a layer on top of a graph
+ * therefore costs only that layer while a shape is being tuned.
+ * <p>
+ * An evaluator is not thread safe. Threads filling tiles in parallel each
+ * use their own evaluator of the same graph.
+ */
+public class NoiseEvaluator {
+
+	private final int maxPoints;
+
+	private final Space grid;
+
+	private final Operation[] operations;
+
+	private final Node root;
+
+	private boolean filled;
+	private float lastX0;
+	private float lastZ0;
+	private float lastDx;
+	private float lastDz;
+	private int lastWidth;
+	private int lastHeight;
+
+	/**
+	 * @param maxPoints
+	 *            the largest number of points of a tile
+	 */
+	public NoiseEvaluator(NoiseNode graph, int maxPoints) {
+		this.maxPoints = maxPoints;
+		grid = new Space(null, null, null, null, maxPoints);
+		List<Operation> compiled = new ArrayList<>();
+		root = compile(graph, grid, new HashMap<>(), compiled);
+		operations = compiled.toArray(new Operation[0]);
+	}
+
+	private Node compile(NoiseNode node, Space space, Map<Space, Map<NoiseNode, Node>> done, List<Operation> out) {
+		Map<NoiseNode, Node> inSpace = done.computeIfAbsent(space, s -> new HashMap<>());
+		Node compiled = inSpace.get(node);
+		if (compiled != null) {
+			return compiled;
+		}
+		Space inputSpace = space;
+		if (node instanceof DomainWarp) {
+			DomainWarp warp = (DomainWarp) node;
+			Node warpX = compile(warp.getWarpX(), space, done, out);
+			Node warpZ = compile(warp.getWarpZ(), space, done, out);
+			inputSpace = new Space(warp, space, warpX, warpZ, maxPoints);
+			out.add(inputSpace);
+		}
+		NoiseNode[] inputs = node.getInputs();
+		Node[] inputNodes = new Node[inputs.length];
+		for (int i = 0; i < inputs.length; i++) {
+			inputNodes[i] = compile(inputs[i], inputSpace, done, out);
+		}
+		compiled = new Node(node, space, inputNodes, maxPoints);
+		inSpace.put(node, compiled);
+		out.add(compiled);
+		return compiled;
+	}
+
+	/**
+	 * Evaluates the graph on a grid of {@code w} by {@code h} points. Point
+	 * {@code (i, j)} is {@code (x0 + i * dx, z0 + j * dz)} and is written to
+	 * {@code out[offset + j * w + i]}.
+	 */
+	public void fill(float[] out, int offset, float x0, float z0, float dx, float dz, int w, int h) {
+		if (w * h > maxPoints) {
+			throw new IllegalArgumentException("Tile of " + w + "x" + h + " exceeds " + maxPoints + " points");
+		}
+		boolean sameTile = filled && x0 == lastX0 && z0 == lastZ0 && dx == lastDx && dz == lastDz && w == lastWidth
+				&& h == lastHeight;
+		grid.changed = !sameTile;
+		if (!sameTile) {
+			grid.points.setGrid(x0, z0, dx, dz, w, h);
+			filled = true;
+			lastX0 = x0;
+			lastZ0 = z0;
+			lastDx = dx;
+			lastDz = dz;
+			lastWidth = w;
+			lastHeight = h;
+		}
+		for (Operation operation : operations) {
+			operation.update();
+		}
+		System.arraycopy(root.values, 0, out, offset, w * h);
+	}
+
+	/**
+	 * @return how many nodes were recomputed by the last {@link #fill}
+	 */
+	public int getRecomputedCount() {
+		int count = 0;
+		for (Operation operation : operations) {
+			if (operation.changed && operation instanceof Node) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private abstract static class Operation {
+
+		/**
+		 * Whether the output was recomputed by the current fill.
+		 */
+		boolean changed;
+
+		abstract void update();
+	}
+
+	/**
+	 * The points of the tile, either the grid or the points moved by a
+	 * domain warp.
+	 */
+	private static class Space extends Operation {
+
+		private final DomainWarp warp;
+		private final Space source;
+		private final Node warpX;
+		private final Node warpZ;
+		private int version = -1;
+
+		final Coordinates points;
+
+		Space(DomainWarp warp, Space source, Node warpX, Node warpZ, int maxPoints) {
+			this.warp = warp;
+			this.source = source;
+			this.warpX = warpX;
+			this.warpZ = warpZ;
+			points = new Coordinates(maxPoints);
+		}
+
+		@Override
+		void update() {
+			int current = warp.getVersion();
+			changed = source.changed || warpX.changed || warpZ.changed || version != current;
+			if (changed) {
+				version = current;
+				points.setWarped(source.points, warpX.values, warpZ.values, warp.getAmplitude());
+			}
+		}
+	}
+
+	private static class Node extends Operation {
+
+		private final NoiseNode node;
+		private final Space space;
+		private final Node[] inputs;
+		private final float[][] inputValues;
+		private int version = -1;
+
+		final float[] values;
+
+		Node(NoiseNode node, Space space, Node[] inputs, int maxPoints) {
+			this.node = node;
+			this.space = space;
+			this.inputs = inputs;
+			inputValues = new float[inputs.length][];
+			for (int i = 0; i < inputs.length; i++) {
+				inputValues[i] = inputs[i].values;
+			}
+			values = new float[maxPoints];
+		}
+
+		@Override
+		void update() {
+			int current = node.getVersion();
+			changed = space.changed || version != current;
+			for (Node input : inputs) {
+				changed |= input.changed;
+			}
+			if (changed) {
+				version = current;
+				node.evaluate(space.points, inputValues, values);
+			}
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package org.lwjglb.game.engine.noise;
+
+/**
+ * A node of a noise graph. Generators sample a {@link NoiseSource}, the other
+ * nodes transform the values of their inputs. A node may be the input of
+ * several others, it is then evaluated once per tile.
+ * <p>
+ * Graphs are run by a {@link NoiseEvaluator}. Changing a parameter marks the
+ * node as changed, so the evaluator recomputes it and the nodes depending on
+ * it on the next tile, while everything else comes from its cache. Nodes
+ * must not be changed while an evaluator is filling a tile.
+ */
+public abstract class NoiseNode {
+
+	private final NoiseNode[] inputs;
+
+	private volatile int version;
+
+	protected NoiseNode(NoiseNode... inputs) {
+		this.inputs = inputs;
+	}
+
+	/**
+	 * @return the nodes whose values are passed to {@link #evaluate}
+	 */
+	NoiseNode[] getInputs() {
+		return inputs;
+	}
+
+	int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Called by the setters of the parameters.
+	 */
+	protected void changed() {
+		version++;
+	}
+
+	/**
+	 * Computes the values of the node at every point.
+	 *
+	 * @param inputs
+	 *            the values of the inputs, in the order of
+	 *            {@link #getInputs()}
+	 */
+	abstract void evaluate(Coordinates points, float[][] inputs, float[] out);
+}
@@ -0,0 +1,38 @@
+package org.lwjglb.game.engine.noise;
+
+/**
+ * A 2D noise function, the input of the generator nodes of a noise graph.
+ * Implementations are called concurrently by the evaluators of different
+ * threads and must not keep mutable state.
+ */
+public interface NoiseSource {
+
+	/**
+	 * @return the noise at {@code (x, z)}, roughly between -1 and 1
+	 */
+	float getNoise(float x, float z);
+
+	/**
+	 * Evaluates the noise at {@code count} arbitrary points.
+	 */
+	default void getNoise(float[] x, float[] z, int count, float[] out) {
+		for (int i = 0; i < count; i++) {
+			out[i] = getNoise(x[i], z[i]);
+		}
+	}
+
+	/**
+	 * Evaluates the noise on a grid of {@code w} by {@code h} points. Point
+	 * {@code (i, j)} is {@code (x0 + i * dx, z0 + j * dz)} and is written to
+	 * {@code out[offset + j * w + i]}. Sources with a faster batch path
+	 * override this.
+	 */
+	default void fill(float[] out, int offset, float x0, float z0, float dx, float dz, int w, int h) {
+		for (int j = 0; j < h; j++) {
+			float z = z0 + j * dz;
+			for (int i = 0; i < w; i++) {
+				out[offset++] = getNoise(x0 + i * dx, z);
+			}
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package org.lwjglb.game.engine.noise;
+
+/**
+ * Maps the values of its input linearly from [-1, 1] to [min, max].
+ */
+public class Remap extends NoiseNode {
+
+	private float min;
+
+	private float max;
+
+	public Remap(NoiseNode input, float min, float max) {
+		super(input);
+		this.min = min;
+		this.max = max;
+	}
+
+	public void setRange(float min, float max) {
+		this.min = min;
+		this.max = max;
+		changed();
+	}
+
+	@Override
+	void evaluate(Coordinates points, float[][] inputs, float[] out) {
+		float[] in = inputs[0];
+		int count = points.count;
+		float scale = (max - min) / 2;
+		float offset = scale + min;
+		for (int p = 0; p < count; p++) {
+			out[p] = in[p] * scale + offset;
+		}
+	}
+}
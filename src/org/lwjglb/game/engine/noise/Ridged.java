@@ -0,0 +1,87 @@
+package org.lwjglb.game.engine.noise;
+
+import java.util.Arrays;
+
+/**
+ * Ridged multifractal noise: like {@link Fbm}, but each octave is folded to
+ * {@code (1 - |n|)^2}, so the zero crossings of the source become sharp
+ * ridges. Each octave is weighted by the previous one, which keeps valleys
+ * smooth and ridges detailed. The result is between -1 and 1.
+ */
+public class Ridged extends NoiseNode {
+
+	private final NoiseSource source;
+
+	private int octaves;
+
+	private float frequency;
+
+	private float lacunarity;
+
+	private float gain;
+
+	public Ridged(NoiseSource source, int octaves, float frequency) {
+		this(source, octaves, frequency, 2, .5f);
+	}
+
+	public Ridged(NoiseSource source, int octaves, float frequency, float lacunarity, float gain) {
+		this.source = source;
+		this.octaves = octaves;
+		this.frequency = frequency;
+		this.lacunarity = lacunarity;
+		this.gain = gain;
+	}
+
+	public void setOctaves(int octaves) {
+		this.octaves = octaves;
+		changed();
+	}
+
+	public void setFrequency(float frequency) {
+		this.frequency = frequency;
+		changed();
+	}
+
+	public void setLacunarity(float lacunarity) {
+		this.lacunarity = lacunarity;
+		changed();
+	}
+
+	public void setGain(float gain) {
+		this.gain = gain;
+		changed();
+	}
+
+	@Override
+	void evaluate(Coordinates points, float[][] inputs, float[] out) {
+		int count = points.count;
+		float[] octave = points.octave;
+		// how much of the next octave shows through at each point
+		float[] weight = points.weight;
+		Arrays.fill(out, 0, count, 0f);
+		Arrays.fill(weight, 0, count, 1f);
+		float amplitude = 1;
+		float total = 0;
+		float f = frequency;
+		for (int i = 0; i < octaves; i++) {
+			points.sample(source, f, octave);
+			for (int p = 0; p < count; p++) {
+				float ridge = 1 - Math.abs(octave[p]);
+				ridge *= ridge;
+				float value = ridge * weight[p];
+				out[p] += amplitude * value;
+				weight[p] = Math.min(value * 2, 1);
+			}
+			total += amplitude;
+			amplitude *= gain;
+			f *= lacunarity;
+		}
+		if (total == 0) {
+			return;
+		}
+		float scale = 2 / total;
+		for (int p = 0; p < count; p++) {
+			out[p] = out[p] * scale - 1;
+		}
+	}
+}
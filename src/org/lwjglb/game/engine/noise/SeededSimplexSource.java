@@ -0,0 +1,34 @@
+package org.lwjglb.game.engine.noise;
+
+import org.lwjglb.game.engine.utils.SimplexNoise;
+
+/**
+ * Noise from the seeded, multi octave
+ * {@link org.lwjglb.game.engine.utils.SimplexNoise}. Grids are filled with its
+ * batch {@link SimplexNoise#fillNoise} path.
+ */
+public class SeededSimplexSource implements NoiseSource {
+
+	private final SimplexNoise noise;
+
+	/**
+	 * @see SimplexNoise#SimplexNoise(int, double, int)
+	 */
+	public SeededSimplexSource(int largestFeature, double persistence, int seed) {
+		this(new SimplexNoise(largestFeature, persistence, seed));
+	}
+
+	public SeededSimplexSource(SimplexNoise noise) {
+		this.noise = noise;
+	}
+
+	@Override
+	public float getNoise(float x, float z) {
+		return (float) noise.getNoise(x, z);
+	}
+
+	@Override
+	public void fill(float[] out, int offset, float x0, float z0, float dx, float dz, int w, int h) {
+		noise.fillNoise(out, offset, x0, z0, dx, dz, w, h);
+	}
+}
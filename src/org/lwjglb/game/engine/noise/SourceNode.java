@@ -0,0 +1,30 @@
+package org.lwjglb.game.engine.noise;
+
+/**
+ * Samples a {@link NoiseSource} as it is, scaled by a frequency.
+ */
+public class SourceNode extends NoiseNode {
+
+	private final NoiseSource source;
+
+	private float frequency;
+
+	public SourceNode(NoiseSource source) {
+		this(source, 1);
+	}
+
+	public SourceNode(NoiseSource source, float frequency) {
+		this.source = source;
+		this.frequency = frequency;
+	}
+
+	public void setFrequency(float frequency) {
+		this.frequency = frequency;
+		changed();
+	}
+
+	@Override
+	void evaluate(Coordinates points, float[][] inputs, float[] out) {
+		points.sample(source, frequency, out);
+	}
+}
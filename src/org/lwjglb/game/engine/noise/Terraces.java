@@ -0,0 +1,44 @@
+package org.lwjglb.game.engine.noise;
+
+/**
+ * Cuts the values of its input into flat steps of {@code stepHeight}. With a
+ * sharpness of 0 the input passes unchanged, with 1 it becomes hard steps,
+ * in between each step is a plateau followed by a slope.
+ */
+public class Terraces extends NoiseNode {
+
+	private float stepHeight;
+
+	private float sharpness;
+
+	public Terraces(NoiseNode input, float stepHeight, float sharpness) {
+		super(input);
+		this.stepHeight = stepHeight;
+		this.sharpness = sharpness;
+	}
+
+	public void setStepHeight(float stepHeight) {
+		this.stepHeight = stepHeight;
+		changed();
+	}
+
+	public void setSharpness(float sharpness) {
+		this.sharpness = sharpness;
+		changed();
+	}
+
+	@Override
+	void evaluate(Coordinates points, float[][] inputs, float[] out) {
+		float[] in = inputs[0];
+		int count = points.count;
+		float inverseStep = 1 / stepHeight;
+		float plateau = Math.min(Math.max(sharpness, 0), 1);
+		float slope = plateau < 1 ? 1 / (1 - plateau) : 0;
+		for (int p = 0; p < count; p++) {
+			float steps = in[p] * inverseStep;
+			float step = (float) Math.floor(steps);
+			float fraction = Math.max(steps - step - plateau, 0) * slope;
+			out[p] = (step + fraction) * stepHeight;
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package org.lwjglb.game.engine.terrain;
+
+/**
+ * Source of terrain heights that fills whole rows of the grid at once, for
+ * sources that are much faster in batches, like noise. Implementations are
+ * called concurrently from several threads on disjoint rows and must not
+ * keep mutable state.
+ */
+public interface HeightRowSampler {
+
+	/**
+	 * Writes the heights of the rows {@code fromZ} up to {@code toZ},
+	 * exclusive, to {@code heights[z * width + x]}.
+	 *
+	 * @param heights
+	 *            row major heights of the whole grid
+	 */
+	void getHeights(int fromZ, int toZ, int width, float[] heights);
+}
@@ -0,0 +1,265 @@
+package org.lwjglb.game.engine.terrain;
+
+/**
+ * Intersects rays with the surface of a {@link TerrainGrid}, as the terrain
+ * mesh triangulates it, for picking and line of sight.
+ * <p>
+ * The caster keeps a pyramid of maximum heights: level 0 holds the highest
+ * corner of every cell, each further level the maximum of 2x2 nodes of the
+ * level below, up to a single node. A ray walks the nodes of a level with a
+ * 2D DDA. Nodes the ray passes above are skipped whole and the walk moves up
+ * a level, nodes it may hit are walked at the next finer level. Only the
+ * cells at level 0 the ray reaches down to are tested against their two
+ * triangles, so large empty stretches cost a logarithmic number of steps.
+ * <p>
+ * Rays are given in the space of the grid. Casting allocates nothing and may
+ * be done from several threads at once.
+ */
+public class HeightfieldRayCaster {
+
+	/**
+	 * Tolerance, in cells, for hits on the border of a cell or triangle.
+	 */
+	private static final float EPSILON = 1e-4f;
+
+	private final TerrainGrid grid;
+
+	private final int cellsX;
+
+	private final int cellsZ;
+
+	/**
+	 * The maximum heights per level, row major.
+	 */
+	private final float[][] maxHeights;
+
+	private final int[] levelWidths;
+
+	private final int[] levelDepths;
+
+	private final float minHeight;
+
+	public HeightfieldRayCaster(TerrainGrid grid) {
+		this.grid = grid;
+		cellsX = grid.getWidth() - 1;
+		cellsZ = grid.getDepth() - 1;
+		int levels = 1;
+		while ((cellsX - 1 >> levels - 1) > 0 || (cellsZ - 1 >> levels - 1) > 0) {
+			levels++;
+		}
+		maxHeights = new float[levels][];
+		levelWidths = new int[levels];
+		levelDepths = new int[levels];
+
+		float[] heights = grid.getHeights();
+		int width = grid.getWidth();
+		float[] cells = new float[cellsX * cellsZ];
+		float min = Float.POSITIVE_INFINITY;
+		for (int z = 0; z < cellsZ; z++) {
+			for (int x = 0; x < cellsX; x++) {
+				int i = z * width + x;
+				cells[z * cellsX + x] = Math.max(Math.max(heights[i], heights[i + 1]),
+						Math.max(heights[i + width], heights[i + width + 1]));
+			}
+		}
+		for (float height : heights) {
+			min = Math.min(min, height);
+		}
+		minHeight = min;
+		maxHeights[0] = cells;
+		levelWidths[0] = cellsX;
+		levelDepths[0] = cellsZ;
+
+		for (int level = 1; level < levels; level++) {
+			int belowWidth = levelWidths[level - 1];
+			int belowDepth = levelDepths[level - 1];
+			int levelWidth = (belowWidth + 1) / 2;
+			int levelDepth = (belowDepth + 1) / 2;
+			float[] below = maxHeights[level - 1];
+			float[] nodes = new float[levelWidth * levelDepth];
+			for (int z = 0; z < levelDepth; z++) {
+				for (int x = 0; x < levelWidth; x++) {
+					int x0 = x * 2;
+					int z0 = z * 2;
+					int x1 = Math.min(x0 + 1, belowWidth - 1);
+					int z1 = Math.min(z0 + 1, belowDepth - 1);
+					nodes[z * levelWidth + x] = Math.max(
+							Math.max(below[z0 * belowWidth + x0], below[z0 * belowWidth + x1]),
+							Math.max(below[z1 * belowWidth + x0], below[z1 * belowWidth + x1]));
+				}
+			}
+			maxHeights[level] = nodes;
+			levelWidths[level] = levelWidth;
+			levelDepths[level] = levelDepth;
+		}
+	}
+
+	/**
+	 * Finds the first point where {@code origin + t * dir} meets the surface,
+	 * for {@code t} between 0 and {@code maxT}. The direction need not be
+	 * normalized.
+	 *
+	 * @return {@code t} of the hit, or -1 if the ray misses the terrain
+	 */
+	public float intersect(float originX, float originY, float originZ, float dirX, float dirY, float dirZ,
+			float maxT) {
+		// work in cells, with y unchanged, which keeps t
+		float ou = (originX - grid.getStartX()) / grid.getXStep();
+		float ov = (originZ - grid.getStartZ()) / grid.getZStep();
+		float du = dirX / grid.getXStep();
+		float dv = dirZ / grid.getZStep();
+		int top = maxHeights.length - 1;
+
+		// clip the ray to the bounding box of the terrain
+		float tStart = 0;
+		float tEnd = maxT;
+		float t0;
+		float t1;
+		if (du != 0) {
+			t0 = -ou / du;
+			t1 = (cellsX - ou) / du;
+			tStart = Math.max(tStart, Math.min(t0, t1));
+			tEnd = Math.min(tEnd, Math.max(t0, t1));
+		} else if (ou < 0 || ou > cellsX) {
+			return -1;
+		}
+		if (dv != 0) {
+			t0 = -ov / dv;
+			t1 = (cellsZ - ov) / dv;
+			tStart = Math.max(tStart, Math.min(t0, t1));
+			tEnd = Math.min(tEnd, Math.max(t0, t1));
+		} else if (ov < 0 || ov > cellsZ) {
+			return -1;
+		}
+		float maxHeight = maxHeights[top][0];
+		if (dirY != 0) {
+			t0 = (minHeight - originY) / dirY;
+			t1 = (maxHeight - originY) / dirY;
+			tStart = Math.max(tStart, Math.min(t0, t1));
+			tEnd = Math.min(tEnd, Math.max(t0, t1));
+		} else if (originY < minHeight || originY > maxHeight) {
+			return -1;
+		}
+		if (tStart > tEnd) {
+			return -1;
+		}
+
+		int stepU = du > 0 ? 1 : du < 0 ? -1 : 0;
+		int stepV = dv > 0 ? 1 : dv < 0 ? -1 : 0;
+		float t = tStart;
+		int level = top;
+		int nodeX = 0;
+		int nodeZ = 0;
+		while (true) {
+			// where the ray leaves the node
+			int u0 = nodeX << level;
+			int v0 = nodeZ << level;
+			int u1 = Math.min(u0 + (1 << level), cellsX);
+			int v1 = Math.min(v0 + (1 << level), cellsZ);
+			float exitU = stepU > 0 ? (u1 - ou) / du : stepU < 0 ? (u0 - ou) / du : Float.POSITIVE_INFINITY;
+			float exitV = stepV > 0 ? (v1 - ov) / dv : stepV < 0 ? (v0 - ov) / dv : Float.POSITIVE_INFINITY;
+			float tOut = Math.min(Math.min(exitU, exitV), tEnd);
+
+			float lowest = Math.min(originY + dirY * t, originY + dirY * tOut);
+			if (lowest <= maxHeights[level][nodeZ * levelWidths[level] + nodeX]) {
+				if (level > 0) {
+					// walk the child the ray is in at t. The side of the middle
+					// is decided by when the ray crosses it, computed exactly
+					// like the exits above, so a child that was just left is
+					// never entered again.
+					level--;
+					nodeX = Math.min(nodeX * 2 + half(nodeX * 2 + 1 << level, ou, du, stepU, t),
+							levelWidths[level] - 1);
+					nodeZ = Math.min(nodeZ * 2 + half(nodeZ * 2 + 1 << level, ov, dv, stepV, t),
+							levelDepths[level] - 1);
+					continue;
+				}
+				float hit = intersectCell(nodeX, nodeZ, ou, originY, ov, du, dirY, dv);
+				if (hit >= 0 && hit <= maxT) {
+					return hit;
+				}
+			}
+
+			// step to the next node of the level, then look at its parent
+			if (tOut >= tEnd) {
+				return -1;
+			}
+			if (exitU <= exitV) {
+				nodeX += stepU;
+			} else {
+				nodeZ += stepV;
+			}
+			if (nodeX < 0 || nodeZ < 0 || nodeX >= levelWidths[level] || nodeZ >= levelDepths[level]) {
+				return -1;
+			}
+			t = tOut;
+			if (level < top) {
+				level++;
+				nodeX >>= 1;
+				nodeZ >>= 1;
+			}
+		}
+	}
+
+	/**
+	 * @return 1 if the ray is past {@code middle} along one axis at {@code t},
+	 *         0 if it is before
+	 */
+	private static int half(int middle, float origin, float dir, int step, float t) {
+		if (step == 0) {
+			return origin >= middle ? 1 : 0;
+		}
+		boolean crossed = (middle - origin) / dir <= t;
+		return step > 0 == crossed ? 1 : 0;
+	}
+
+	/**
+	 * Intersects the ray, in cells, with the two triangles of a cell, split
+	 * along the diagonal from {@code (x + 1, z)} to {@code (x, z + 1)} like
+	 * the terrain mesh.
+	 *
+	 * @return the smallest {@code t} of a hit, or -1
+	 */
+	private float intersectCell(int x, int z, float ou, float oy, float ov, float du, float dy, float dv) {
+		int width = grid.getWidth();
+		float[] heights = grid.getHeights();
+		int i = z * width + x;
+		float h00 = heights[i];
+		float h10 = heights[i + 1];
+		float h01 = heights[i + width];
+		float h11 = heights[i + width + 1];
+		float pu = ou - x;
+		float pv = ov - z;
+
+		float best = -1;
+		// the triangle at (x, z): h = h00 + a * u + b * v
+		float a = h10 - h00;
+		float b = h01 - h00;
+		float denominator = dy - a * du - b * dv;
+		if (denominator != 0) {
+			float t = (h00 + a * pu + b * pv - oy) / denominator;
+			float u = pu + du * t;
+			float v = pv + dv * t;
+			if (t >= 0 && u >= -EPSILON && v >= -EPSILON && u + v <= 1 + EPSILON) {
+				best = t;
+			}
+		}
+		// the triangle at (x + 1, z + 1): h = h11 + a * (u - 1) + b * (v - 1)
+		a = h11 - h01;
+		b = h11 - h10;
+		denominator = dy - a * du - b * dv;
+		if (denominator != 0) {
+			float t = (h11 + a * (pu - 1) + b * (pv - 1) - oy) / denominator;
+			float u = pu + du * t;
+			float v = pv + dv * t;
+			if (t >= 0 && (best < 0 || t < best) && u <= 1 + EPSILON && v <= 1 + EPSILON && u + v >= 1 - EPSILON) {
+				best = t;
+			}
+		}
+		return best;
+	}
+
+	public TerrainGrid getGrid() {
+		return grid;
+	}
+}
@@ -0,0 +1,77 @@
+package org.lwjglb.game.engine.terrain;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs work over the rows of a grid in bands on the common
+ * {@link ForkJoinPool}. A parallelism below that of the common pool is kept
+ * by splitting the rows into no more bands than that.
+ */
+class RowBands {
+
+	/**
+	 * Bands with fewer rows than this are not split any further.
+	 */
+	private static final int MIN_BAND_ROWS = 16;
+
+	private final int parallelism;
+
+	/**
+	 * @param parallelism
+	 *            maximum number of worker threads, 1 runs everything on the
+	 *            calling thread
+	 */
+	RowBands(int parallelism) {
+		this.parallelism = Math.max(parallelism, 1);
+	}
+
+	void forEach(int rows, RowBand band) {
+		int bands = (rows + MIN_BAND_ROWS - 1) / MIN_BAND_ROWS;
+		if (parallelism < ForkJoinPool.getCommonPoolParallelism()) {
+			bands = Math.min(bands, parallelism);
+		}
+		if (bands <= 1) {
+			band.run(0, rows);
+		} else {
+			ForkJoinPool.commonPool().invoke(new RowBandTask(band, rows, bands, 0, bands));
+		}
+	}
+
+	interface RowBand {
+		void run(int fromRow, int toRow);
+	}
+
+	/**
+	 * Runs the bands {@code fromBand} to {@code toBand} of {@code bands}
+	 * equal bands.
+	 */
+	private static class RowBandTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final RowBand band;
+		private final int rows;
+		private final int bands;
+		private final int fromBand;
+		private final int toBand;
+
+		RowBandTask(RowBand band, int rows, int bands, int fromBand, int toBand) {
+			this.band = band;
+			this.rows = rows;
+			this.bands = bands;
+			this.fromBand = fromBand;
+			this.toBand = toBand;
+		}
+
+		@Override
+		protected void compute() {
+			if (toBand - fromBand == 1) {
+				band.run((int) ((long) rows * fromBand / bands), (int) ((long) rows * toBand / bands));
+			} else {
+				int mid = (fromBand + toBand) >>> 1;
+				invokeAll(new RowBandTask(band, rows, bands, fromBand, mid),
+						new RowBandTask(band, rows, bands, mid, toBand));
+			}
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package org.lwjglb.game.engine.terrain;
+
+import org.lwjglb.game.engine.Mesh;
+
+/**
+ * A piece of terrain uploaded to the GPU with its own VAO, together with its
+ * model space bounding box.
+ */
+public class TerrainChunk {
+
+	private final Mesh mesh;
+
+	private final long sizeInBytes;
+
+	private final float minX, minY, minZ;
+
+	private final float maxX, maxY, maxZ;
+
+	private final boolean sharedVertices;
+
+	private final int colorSeed;
+
+	/**
+	 * @param sharedVertices
+	 *            whether the mesh leaves the per triangle colors to the shader
+	 * @param colorSeed
+	 *            seed of the per triangle colors in the shader
+	 */
+	public TerrainChunk(Mesh mesh, long sizeInBytes, float minX, float minY, float minZ, float maxX, float maxY,
+			float maxZ, boolean sharedVertices, int colorSeed) {
+		this.mesh = mesh;
+		this.sizeInBytes = sizeInBytes;
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.maxZ = maxZ;
+		this.sharedVertices = sharedVertices;
+		this.colorSeed = colorSeed;
+	}
+
+	public Mesh getMesh() {
+		return mesh;
+	}
+
+	/**
+	 * @return the GPU memory taken by the vertex and index buffers
+	 */
+	public long getSizeInBytes() {
+		return sizeInBytes;
+	}
+
+	public float getMinX() {
+		return minX;
+	}
+
+	public float getMinY() {
+		return minY;
+	}
+
+	public float getMinZ() {
+		return minZ;
+	}
+
+	public float getMaxX() {
+		return maxX;
+	}
+
+	public float getMaxY() {
+		return maxY;
+	}
+
+	public float getMaxZ() {
+		return maxZ;
+	}
+
+	public boolean hasSharedVertices() {
+		return sharedVertices;
+	}
+
+	public int getColorSeed() {
+		return colorSeed;
+	}
+
+	public void cleanup() {
+		mesh.cleanup();
+	}
+}
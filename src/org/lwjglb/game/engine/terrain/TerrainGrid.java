@@ -0,0 +1,152 @@
+package org.lwjglb.game.engine.terrain;
+
+import org.joml.Vector3f;
+
+/**
+ * A regular grid of heights together with the model space placement of its
+ * rows and columns.
+ */
+public class TerrainGrid {
+
+	private final int width;
+	private final int depth;
+	private final float[] heights;
+	private final float startX;
+	private final float startZ;
+	private final float xStep;
+	private final float zStep;
+
+	/**
+	 * @param width
+	 *            number of grid points along x
+	 * @param depth
+	 *            number of grid points along z
+	 * @param heights
+	 *            row major heights, {@code heights[z * width + x]}
+	 * @param startX
+	 *            x coordinate of the first column
+	 * @param startZ
+	 *            z coordinate of the first row
+	 * @param xStep
+	 *            distance between two columns
+	 * @param zStep
+	 *            distance between two rows
+	 */
+	public TerrainGrid(int width, int depth, float[] heights, float startX, float startZ, float xStep, float zStep) {
+		if (width < 2 || depth < 2) {
+			throw new IllegalArgumentException("Terrain grid must be at least 2x2: " + width + "x" + depth);
+		}
+		if (heights.length != width * depth) {
+			throw new IllegalArgumentException("Expected " + width * depth + " heights, got " + heights.length);
+		}
+		this.width = width;
+		this.depth = depth;
+		this.heights = heights;
+		this.startX = startX;
+		this.startZ = startZ;
+		this.xStep = xStep;
+		this.zStep = zStep;
+	}
+
+	/**
+	 * Samples the heights in bands of rows, which are sampled in parallel.
+	 *
+	 * @param sampler
+	 *            source of the heights of whole rows
+	 * @param parallelism
+	 *            maximum number of threads sampling, 1 samples on the calling
+	 *            thread only
+	 */
+	public static TerrainGrid sampleRows(int width, int depth, HeightRowSampler sampler, int parallelism,
+			float startX, float startZ, float xStep, float zStep) {
+		float[] heights = new float[width * depth];
+		new RowBands(parallelism).forEach(depth, (from, to) -> sampler.getHeights(from, to, width, heights));
+		return new TerrainGrid(width, depth, heights, startX, startZ, xStep, zStep);
+	}
+
+	public float getHeight(int x, int z) {
+		return heights[z * width + x];
+	}
+
+	/**
+	 * Interpolates the height bilinearly between the four grid points around
+	 * a point. Points outside the grid are clamped to its border.
+	 *
+	 * @param x
+	 *            x coordinate in the space of the grid
+	 * @param z
+	 *            z coordinate in the space of the grid
+	 */
+	public float interpolateHeight(float x, float z) {
+		float column = clamp((x - startX) / xStep, width - 1);
+		float row = clamp((z - startZ) / zStep, depth - 1);
+		int x0 = Math.min((int) column, width - 2);
+		int z0 = Math.min((int) row, depth - 2);
+		float fx = column - x0;
+		float fz = row - z0;
+		int i = z0 * width + x0;
+		float top = heights[i] + (heights[i + 1] - heights[i]) * fx;
+		float bottom = heights[i + width] + (heights[i + width + 1] - heights[i + width]) * fx;
+		return top + (bottom - top) * fz;
+	}
+
+	/**
+	 * Computes the normal of the bilinearly interpolated surface at a point.
+	 * Points outside the grid are clamped to its border.
+	 *
+	 * @param x
+	 *            x coordinate in the space of the grid
+	 * @param z
+	 *            z coordinate in the space of the grid
+	 * @return {@code dest}, the unit normal
+	 */
+	public Vector3f interpolateNormal(float x, float z, Vector3f dest) {
+		float column = clamp((x - startX) / xStep, width - 1);
+		float row = clamp((z - startZ) / zStep, depth - 1);
+		int x0 = Math.min((int) column, width - 2);
+		int z0 = Math.min((int) row, depth - 2);
+		float fx = column - x0;
+		float fz = row - z0;
+		int i = z0 * width + x0;
+		float h00 = heights[i];
+		float h10 = heights[i + 1];
+		float h01 = heights[i + width];
+		float h11 = heights[i + width + 1];
+		// slopes of the surface along x and z
+		float slopeX = ((h10 - h00) * (1 - fz) + (h11 - h01) * fz) / xStep;
+		float slopeZ = ((h01 - h00) * (1 - fx) + (h11 - h10) * fx) / zStep;
+		return dest.set(-slopeX, 1, -slopeZ).normalize();
+	}
+
+	private static float clamp(float value, int max) {
+		return value < 0 ? 0 : value > max ? max : value;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public float[] getHeights() {
+		return heights;
+	}
+
+	public float getStartX() {
+		return startX;
+	}
+
+	public float getStartZ() {
+		return startZ;
+	}
+
+	public float getXStep() {
+		return xStep;
+	}
+
+	public float getZStep() {
+		return zStep;
+	}
+}
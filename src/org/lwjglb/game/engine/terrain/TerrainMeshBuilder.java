@@ -0,0 +1,376 @@
+package org.lwjglb.game.engine.terrain;
+
+import java.awt.Color;
+
+import org.joml.Vector3f;
+import org.lwjglb.game.engine.Mesh;
+import org.lwjglb.game.engine.VertexFormat;
+
+/**
+ * Builds a flat shaded terrain mesh from a grid of heights straight into
+ * preallocated primitive arrays, so no boxed values are created no matter how
+ * big the grid is.
+ * <p>
+ * By default every grid point is emitted twice so that the two triangles of a
+ * cell can get different colors through the {@code flat} qualifier of the
+ * terrain shader. With shared vertices every grid point is emitted once in
+ * the plain terrain color, and the terrain shader varies the brightness per
+ * triangle from {@code gl_PrimitiveID} instead, see
+ * {@link org.lwjglb.game.engine.TerrainShader#setColorSeed(int)}. That halves
+ * the vertex data and lets neighbouring triangles share transformed
+ * vertices.
+ * <p>
+ * Vertex generation and normal computation are split into bands of rows and
+ * run on a {@link java.util.concurrent.ForkJoinPool}. Every grid point only
+ * depends on the heights and its own index, so the output is bit-identical to
+ * the serial path regardless of how the rows are split.
+ * <p>
+ * The builder can also cover a window of a larger {@link TerrainGrid} with
+ * only every n-th grid point, optionally surrounded by a skirt hanging down
+ * from its border. This is used by {@link TerrainQuadTree} to build chunks of
+ * different levels of detail whose seams are hidden by the skirts.
+ */
+public class TerrainMeshBuilder {
+
+	/**
+	 * Range of the brightness variation between triangles.
+	 */
+	public static final float COLOR_JITTER = 0.5f;
+
+	private final int width;
+	private final int depth;
+	private final boolean skirts;
+	private final int copies;
+
+	private final float[] positions;
+	private final float[] colors;
+	private final float[] normals;
+	private final int[] indices;
+
+	private RowBands rowBands = new RowBands(Integer.MAX_VALUE);
+
+	/**
+	 * Smallest distance between two grid points of the last build.
+	 */
+	private float gridSpacing;
+
+	/**
+	 * @param width
+	 *            number of grid points along x
+	 * @param depth
+	 *            number of grid points along z
+	 */
+	public TerrainMeshBuilder(int width, int depth) {
+		this(width, depth, false);
+	}
+
+	/**
+	 * @param width
+	 *            number of grid points along x
+	 * @param depth
+	 *            number of grid points along z
+	 * @param skirts
+	 *            whether to reserve room for a skirt around the border
+	 */
+	public TerrainMeshBuilder(int width, int depth, boolean skirts) {
+		this(width, depth, skirts, false);
+	}
+
+	/**
+	 * @param width
+	 *            number of grid points along x
+	 * @param depth
+	 *            number of grid points along z
+	 * @param skirts
+	 *            whether to reserve room for a skirt around the border
+	 * @param sharedVertices
+	 *            whether to emit every grid point once and leave the color
+	 *            variation to the shader
+	 */
+	public TerrainMeshBuilder(int width, int depth, boolean skirts, boolean sharedVertices) {
+		if (width < 2 || depth < 2) {
+			throw new IllegalArgumentException("Terrain grid must be at least 2x2: " + width + "x" + depth);
+		}
+		this.width = width;
+		this.depth = depth;
+		this.skirts = skirts;
+		this.copies = sharedVertices ? 1 : 2;
+		int vertexCount = width * depth * copies;
+		int indexCount = (width - 1) * (depth - 1) * 6;
+		if (skirts) {
+			vertexCount += 2 * (width + depth);
+			indexCount += 2 * ((width - 1) + (depth - 1)) * 6;
+		}
+		positions = new float[vertexCount * 3];
+		colors = new float[vertexCount * 3];
+		normals = new float[vertexCount * 3];
+		indices = new int[indexCount];
+	}
+
+	/**
+	 * Caps the number of threads used to build the mesh.
+	 *
+	 * @param parallelism
+	 *            maximum number of worker threads, 1 builds on the calling
+	 *            thread only
+	 */
+	public void setParallelism(int parallelism) {
+		rowBands = new RowBands(parallelism);
+	}
+
+	/**
+	 * Fills the vertex and index arrays with the whole grid.
+	 *
+	 * @param heights
+	 *            row major heights, {@code heights[z * width + x]}
+	 * @param startX
+	 *            x coordinate of the first column
+	 * @param startZ
+	 *            z coordinate of the first row
+	 * @param xStep
+	 *            distance between two columns
+	 * @param zStep
+	 *            distance between two rows
+	 * @param color
+	 *            base color of the terrain
+	 * @param colorSeed
+	 *            seed of the per vertex brightness variation
+	 */
+	public void build(float[] heights, float startX, float startZ, float xStep, float zStep, Color color,
+			long colorSeed) {
+		build(new TerrainGrid(width, depth, heights, startX, startZ, xStep, zStep), 0, 0, 1, 0, color, colorSeed);
+	}
+
+	/**
+	 * Fills the vertex and index arrays with a window of the grid. Vertex
+	 * {@code (x, z)} of the mesh is placed on grid point
+	 * {@code (x0 + x * stride, z0 + z * stride)}, clamped to the last row and
+	 * column of the grid.
+	 *
+	 * @param grid
+	 *            the heights to build from
+	 * @param x0
+	 *            first column of the window
+	 * @param z0
+	 *            first row of the window
+	 * @param stride
+	 *            number of grid cells between two mesh vertices
+	 * @param skirtDepth
+	 *            how far the skirt hangs below the border, ignored if the
+	 *            builder has no room for skirts
+	 * @param color
+	 *            base color of the terrain
+	 * @param colorSeed
+	 *            seed of the per vertex brightness variation
+	 */
+	public void build(TerrainGrid grid, int x0, int z0, int stride, float skirtDepth, Color color, long colorSeed) {
+		float red = color.getRed() / 255f;
+		float green = color.getGreen() / 255f;
+		float blue = color.getBlue() / 255f;
+		int gridWidth = grid.getWidth();
+		gridSpacing = Math.min(grid.getXStep(), grid.getZStep());
+
+		rowBands.forEach(depth, (from, to) -> {
+			for (int z = from; z < to; z++) {
+				int gz = gridZ(grid, z0, z, stride);
+				for (int x = 0; x < width; x++) {
+					int gx = gridX(grid, x0, x, stride);
+					float posX = grid.getStartX() + gx * grid.getXStep();
+					float posY = grid.getHeight(gx, gz);
+					float posZ = grid.getStartZ() + gz * grid.getZStep();
+					for (int copy = 0; copy < copies; copy++) {
+						int j = vertex(x, z, copy) * 3;
+						positions[j] = posX;
+						positions[j + 1] = posY;
+						positions[j + 2] = posZ;
+
+						float brightness = copies == 1 ? 0
+								: (random(colorSeed, (gz * gridWidth + gx) * 2 + copy) - 0.5f) * COLOR_JITTER;
+						colors[j] = red + brightness;
+						colors[j + 1] = green + brightness;
+						colors[j + 2] = blue + brightness;
+					}
+				}
+			}
+			calcNormals(grid, x0, z0, stride, from, to);
+			// the last row has no cells
+			for (int z = from; z < Math.min(to, depth - 1); z++) {
+				int i = z * (width - 1) * 6;
+				for (int x = 0; x < width - 1; x++) {
+					// the second triangle uses the second copies, if any
+					int second = copies - 1;
+					indices[i++] = vertex(x, z, 0);
+					indices[i++] = vertex(x, z + 1, 0);
+					indices[i++] = vertex(x + 1, z, 0);
+
+					indices[i++] = vertex(x + 1, z, second);
+					indices[i++] = vertex(x, z + 1, second);
+					indices[i++] = vertex(x + 1, z + 1, second);
+				}
+			}
+		});
+
+		if (skirts) {
+			buildSkirts(skirtDepth);
+		}
+	}
+
+	/**
+	 * Appends a strip of triangles below each border of the mesh. Chunks of
+	 * different detail do not share their border vertices, and the skirts
+	 * cover the cracks this opens up between them.
+	 */
+	private void buildSkirts(float skirtDepth) {
+		int vertex = width * depth * copies;
+		int index = (width - 1) * (depth - 1) * 6;
+		// top, bottom, left, right
+		int[] starts = { 0, (depth - 1) * width, 0, width - 1 };
+		int[] steps = { 1, 1, width, width };
+		int[] counts = { width, width, depth, depth };
+		for (int edge = 0; edge < 4; edge++) {
+			int first = vertex;
+			for (int k = 0; k < counts[edge]; k++) {
+				int top = (starts[edge] + k * steps[edge]) * copies;
+				System.arraycopy(positions, top * 3, positions, vertex * 3, 3);
+				System.arraycopy(colors, top * 3, colors, vertex * 3, 3);
+				System.arraycopy(normals, top * 3, normals, vertex * 3, 3);
+				positions[vertex * 3 + 1] -= skirtDepth;
+				vertex++;
+			}
+			for (int k = 0; k < counts[edge] - 1; k++) {
+				int topA = (starts[edge] + k * steps[edge]) * copies;
+				int topB = (starts[edge] + (k + 1) * steps[edge]) * copies;
+				int bottomA = first + k;
+				int bottomB = first + k + 1;
+
+				indices[index++] = topA;
+				indices[index++] = bottomA;
+				indices[index++] = topB;
+
+				indices[index++] = topB;
+				indices[index++] = bottomA;
+				indices[index++] = bottomB;
+			}
+		}
+	}
+
+	/**
+	 * Averages the normals of the four triangles formed with the neighbours of
+	 * every vertex. Vertices on the border of the grid point straight up.
+	 */
+	private void calcNormals(TerrainGrid grid, int x0, int z0, int stride, int fromRow, int toRow) {
+		Vector3f v1 = new Vector3f();
+		Vector3f v2 = new Vector3f();
+		Vector3f v3 = new Vector3f();
+		Vector3f v4 = new Vector3f();
+		Vector3f v12 = new Vector3f();
+		Vector3f v23 = new Vector3f();
+		Vector3f v34 = new Vector3f();
+		Vector3f v41 = new Vector3f();
+		Vector3f normal = new Vector3f();
+		int lastX = grid.getWidth() - 1;
+		int lastZ = grid.getDepth() - 1;
+		float xStep = grid.getXStep();
+		float zStep = grid.getZStep();
+		for (int row = fromRow; row < toRow; row++) {
+			int gz = gridZ(grid, z0, row, stride);
+			for (int col = 0; col < width; col++) {
+				int gx = gridX(grid, x0, col, stride);
+				if (gz > 0 && gz < lastZ && gx > 0 && gx < lastX) {
+					int left = Math.max(gx - stride, 0);
+					int right = Math.min(gx + stride, lastX);
+					int up = Math.max(gz - stride, 0);
+					int down = Math.min(gz + stride, lastZ);
+					float y0 = grid.getHeight(gx, gz);
+					v1.set((left - gx) * xStep, grid.getHeight(left, gz) - y0, 0);
+					v2.set(0, grid.getHeight(gx, down) - y0, (down - gz) * zStep);
+					v3.set((right - gx) * xStep, grid.getHeight(right, gz) - y0, 0);
+					v4.set(0, grid.getHeight(gx, up) - y0, (up - gz) * zStep);
+
+					v1.cross(v2, v12).normalize();
+					v2.cross(v3, v23).normalize();
+					v3.cross(v4, v34).normalize();
+					v4.cross(v1, v41).normalize();
+
+					normal.set(v12).add(v23).add(v34).add(v41).normalize();
+				} else {
+					normal.set(0, 1, 0);
+				}
+				for (int copy = 0; copy < copies; copy++) {
+					int i = vertex(col, row, copy) * 3;
+					normals[i] = normal.x;
+					normals[i + 1] = normal.y;
+					normals[i + 2] = normal.z;
+				}
+			}
+		}
+	}
+
+	private int vertex(int x, int z, int copy) {
+		return (z * width + x) * copies + copy;
+	}
+
+	private static int gridX(TerrainGrid grid, int x0, int x, int stride) {
+		return Math.min(x0 + x * stride, grid.getWidth() - 1);
+	}
+
+	private static int gridZ(TerrainGrid grid, int z0, int z, int stride) {
+		return Math.min(z0 + z * stride, grid.getDepth() - 1);
+	}
+
+	/**
+	 * Stateless random number in [0, 1) for the given seed and vertex, so the
+	 * colors do not depend on the order the vertices are generated in.
+	 */
+	private static float random(long seed, int index) {
+		long h = seed + index * 0x9E3779B97F4A7C15L;
+		h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+		h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+		h = h ^ (h >>> 31);
+		return (h >>> 40) * 0x1.0p-24f;
+	}
+
+	/**
+	 * @return whether every grid point is emitted only once
+	 */
+	public boolean hasSharedVertices() {
+		return copies == 1;
+	}
+
+	/**
+	 * Uploads the built arrays in the {@link VertexFormat#COMPACT compact}
+	 * format, or the {@link VertexFormat#PACKED packed} one if half float
+	 * positions are too coarse for the grid, as for large grids. Must be
+	 * called from the thread owning the GL context.
+	 */
+	public Mesh createMesh() {
+		return new Mesh(positions, colors, normals, indices, getVertexFormat());
+	}
+
+	/**
+	 * @return the format {@link #createMesh()} uploads the built arrays in
+	 */
+	public VertexFormat getVertexFormat() {
+		float maxAbs = 0;
+		for (float position : positions) {
+			maxAbs = Math.max(maxAbs, Math.abs(position));
+		}
+		return VertexFormat.isHalfPrecise(maxAbs, gridSpacing) ? VertexFormat.COMPACT : VertexFormat.PACKED;
+	}
+
+	public float[] getPositions() {
+		return positions;
+	}
+
+	public float[] getColors() {
+		return colors;
+	}
+
+	public float[] getNormals() {
+		return normals;
+	}
+
+	public int[] getIndices() {
+		return indices;
+	}
+}
@@ -0,0 +1,466 @@
+package org.lwjglb.game.engine.terrain;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjglb.game.engine.FrustumCuller;
+import org.lwjglb.game.engine.Mesh;
+import org.lwjglb.game.engine.TerrainShader;
+
+/**
+ * Splits a {@link TerrainGrid} into a quadtree of {@link TerrainChunk}s. Every
+ * node covers a square of the grid with the same number of vertices, so the
+ * deeper a node, the finer its detail.
+ * <p>
+ * Each frame {@link #update} picks the nodes to draw by their screen space
+ * error: a node is refined into its children while its geometric error would
+ * cover more than {@link #setMaxPixelError(float) a few pixels} on screen.
+ * Chunks are built on worker threads when first needed, uploaded on the GL
+ * thread a few per frame, and the least recently used ones are evicted when
+ * the GPU memory used by all chunks goes over the budget. Until the chunks of
+ * the children have arrived the parent is drawn instead. A node whose parent
+ * has no chunk either is left out, so at startup, and while the number of
+ * chunks being built is at its limit, parts of the terrain may be missing for
+ * a few frames.
+ * <p>
+ * Only the meshes are streamed. The grid itself holds the heights of the
+ * whole terrain and must be complete before the tree is created.
+ * <p>
+ * Neighbouring chunks of different detail do not share their border vertices.
+ * The cracks between them are hidden by a skirt around every chunk.
+ * <p>
+ * Chunks share their vertices between triangles by default, see
+ * {@link TerrainMeshBuilder}.
+ * <p>
+ * When rendering, the tree is culled top down. Once a node is completely
+ * inside the frustum none of its descendants are tested any more.
+ */
+public class TerrainQuadTree {
+
+	private static final int MAX_PENDING_BUILDS = 8;
+
+	private final TerrainGrid grid;
+
+	private final int chunkCells;
+
+	private final long memoryBudget;
+
+	private final Color color;
+
+	private final long colorSeed;
+
+	private final Node root;
+
+	private final List<Node> selected = new ArrayList<>();
+
+	/**
+	 * Nodes with an uploaded chunk, least recently used first.
+	 */
+	private final LinkedHashMap<Node, Node> resident = new LinkedHashMap<>(16, .75f, true);
+
+	private final Queue<Node> uploads = new ConcurrentLinkedQueue<>();
+
+	private final Matrix4f inverseModelMatrix = new Matrix4f();
+
+	private final Vector3f localCamera = new Vector3f();
+
+	private final Vector3f worldMin = new Vector3f();
+
+	private final Vector3f worldMax = new Vector3f();
+
+	private long residentBytes;
+
+	private int pendingBuilds;
+
+	private long frame;
+
+	private float maxPixelError = 2;
+
+	private int maxUploadsPerFrame = 4;
+
+	private boolean sharedVertices = true;
+
+	private float errorToPixels;
+
+	/**
+	 * @param grid
+	 *            the heights to split up
+	 * @param chunkCells
+	 *            number of cells along each side of a chunk, a power of two
+	 * @param memoryBudget
+	 *            number of bytes the chunks may take on the GPU
+	 * @param color
+	 *            base color of the terrain
+	 * @param colorSeed
+	 *            seed of the per vertex brightness variation
+	 */
+	public TerrainQuadTree(TerrainGrid grid, int chunkCells, long memoryBudget, Color color, long colorSeed) {
+		if (Integer.bitCount(chunkCells) != 1) {
+			throw new IllegalArgumentException("Chunk size must be a power of two: " + chunkCells);
+		}
+		this.grid = grid;
+		this.chunkCells = chunkCells;
+		this.memoryBudget = memoryBudget;
+		this.color = color;
+		this.colorSeed = colorSeed;
+
+		int cells = Math.max(grid.getWidth(), grid.getDepth()) - 1;
+		int rootSize = chunkCells;
+		while (rootSize < cells) {
+			rootSize *= 2;
+		}
+		root = createNode(null, 0, 0, rootSize);
+	}
+
+	private Node createNode(Node parent, int x0, int z0, int size) {
+		Node node = new Node(parent, x0, z0, size, size / chunkCells);
+		if (node.stride > 1) {
+			int half = size / 2;
+			node.children = new Node[4];
+			int count = 0;
+			for (int i = 0; i < 4; i++) {
+				int cx = x0 + (i & 1) * half;
+				int cz = z0 + (i >> 1) * half;
+				if (cx < grid.getWidth() - 1 && cz < grid.getDepth() - 1) {
+					node.children[count++] = createNode(node, cx, cz, half);
+				}
+			}
+			if (count < 4) {
+				Node[] children = new Node[count];
+				System.arraycopy(node.children, 0, children, 0, count);
+				node.children = children;
+			}
+		}
+		node.computeBounds();
+		return node;
+	}
+
+	/**
+	 * Picks the chunks to draw this frame, uploads the chunks built since the
+	 * last frame and evicts chunks if over budget. Must be called from the
+	 * thread owning the GL context.
+	 *
+	 * @param cameraPosition
+	 *            position of the camera in world space
+	 * @param modelMatrix
+	 *            transformation from the grid space to world space
+	 * @param fov
+	 *            vertical field of view in radians
+	 * @param viewportHeight
+	 *            height of the viewport in pixels
+	 */
+	public void update(Vector3f cameraPosition, Matrix4f modelMatrix, float fov, int viewportHeight) {
+		frame++;
+		uploadChunks();
+
+		modelMatrix.invert(inverseModelMatrix);
+		inverseModelMatrix.transformPosition(cameraPosition, localCamera);
+		errorToPixels = viewportHeight / (2 * (float) Math.tan(fov / 2));
+
+		selected.clear();
+		select(root);
+		evictChunks();
+	}
+
+	private void select(Node node) {
+		node.lastUsed = frame;
+		if (node.chunk != null) {
+			// moves the node to the end of the eviction order
+			resident.get(node);
+		}
+		if (node.children != null && node.getPixelError() > maxPixelError) {
+			boolean childrenReady = true;
+			for (Node child : node.children) {
+				if (child.chunk == null) {
+					requestChunk(child);
+					childrenReady = false;
+				}
+			}
+			if (childrenReady || node.chunk == null) {
+				for (Node child : node.children) {
+					select(child);
+				}
+				return;
+			}
+		}
+		if (node.chunk != null) {
+			node.selectedFrame = frame;
+			selected.add(node);
+		} else {
+			requestChunk(node);
+		}
+	}
+
+	private void requestChunk(Node node) {
+		if (node.requested || pendingBuilds >= MAX_PENDING_BUILDS) {
+			return;
+		}
+		node.requested = true;
+		pendingBuilds++;
+		ForkJoinPool.commonPool().execute(() -> {
+			try {
+				node.builder = buildChunk(node);
+			} catch (Throwable e) {
+				// handed over without a builder, the GL thread resets the node
+				node.buildError = e;
+			}
+			uploads.add(node);
+		});
+	}
+
+	private TerrainMeshBuilder buildChunk(Node node) {
+		int cols = (Math.min(node.size, grid.getWidth() - 1 - node.x0) + node.stride - 1) / node.stride + 1;
+		int rows = (Math.min(node.size, grid.getDepth() - 1 - node.z0) + node.stride - 1) / node.stride + 1;
+		TerrainMeshBuilder builder = new TerrainMeshBuilder(cols, rows, true, sharedVertices);
+		// chunks are built concurrently already
+		builder.setParallelism(1);
+		float parentError = node.parent != null ? node.parent.error : node.error;
+		float skirtDepth = 2 * parentError + grid.getXStep() * node.stride;
+		builder.build(grid, node.x0, node.z0, node.stride, skirtDepth, color, colorSeed);
+		return builder;
+	}
+
+	private void uploadChunks() {
+		for (int i = 0; i < maxUploadsPerFrame; i++) {
+			Node node = uploads.poll();
+			if (node == null) {
+				break;
+			}
+			TerrainMeshBuilder builder = node.builder;
+			node.builder = null;
+			pendingBuilds--;
+			if (builder == null) {
+				System.err.println("Failed to build terrain chunk at " + node.x0 + ", " + node.z0);
+				node.buildError.printStackTrace();
+				node.buildError = null;
+				node.requested = false;
+				continue;
+			}
+			Mesh mesh = builder.createMesh();
+			long size = mesh.getSizeInBytes();
+			node.chunk = new TerrainChunk(mesh, size, node.minX, node.minY, node.minZ, node.maxX,
+					node.maxY, node.maxZ, builder.hasSharedVertices(), node.getColorSeed());
+			resident.put(node, node);
+			residentBytes += size;
+		}
+	}
+
+	private void evictChunks() {
+		Iterator<Node> nodes = resident.keySet().iterator();
+		while (residentBytes > memoryBudget && nodes.hasNext()) {
+			Node oldest = nodes.next();
+			if (oldest.lastUsed == frame) {
+				// everything left is needed for this frame
+				return;
+			}
+			nodes.remove();
+			residentBytes -= oldest.chunk.getSizeInBytes();
+			oldest.chunk.cleanup();
+			oldest.chunk = null;
+			oldest.requested = false;
+		}
+	}
+
+	/**
+	 * Draws the chunks picked by the last {@link #update} that are not culled.
+	 *
+	 * @param culler
+	 *            culler of the current pass
+	 * @param modelMatrix
+	 *            transformation from the grid space to world space
+	 * @param shader
+	 *            the bound terrain shader
+	 */
+	public void render(FrustumCuller culler, Matrix4f modelMatrix, TerrainShader shader) {
+		render(root, culler, modelMatrix, shader, FrustumCuller.ALL_PLANES);
+	}
+
+	private void render(Node node, FrustumCuller culler, Matrix4f modelMatrix, TerrainShader shader, int mask) {
+		if (node.lastUsed != frame) {
+			// neither this node nor any of its descendants was picked
+			return;
+		}
+		if (mask != 0) {
+			modelMatrix.transformAab(node.minX, node.minY, node.minZ, node.maxX, node.maxY, node.maxZ, worldMin,
+					worldMax);
+			int result = culler.intersect(worldMin.x, worldMin.y, worldMin.z, worldMax.x, worldMax.y, worldMax.z,
+					mask, node.cullingPlanes);
+			if (result >= 0) {
+				culler.countCulled();
+				return;
+			}
+			if (result == FrustumIntersection.INSIDE) {
+				mask = 0;
+			}
+		}
+		if (node.selectedFrame == frame) {
+			culler.countVisible();
+			TerrainChunk chunk = node.chunk;
+			shader.setColorJitter(chunk.hasSharedVertices() ? TerrainMeshBuilder.COLOR_JITTER : 0);
+			shader.setColorSeed(chunk.getColorSeed());
+			chunk.getMesh().render();
+		} else if (node.children != null) {
+			for (Node child : node.children) {
+				render(child, culler, modelMatrix, shader, mask);
+			}
+		}
+	}
+
+	/**
+	 * @param maxPixelError
+	 *            how many pixels the terrain may deviate from full detail
+	 */
+	public void setMaxPixelError(float maxPixelError) {
+		this.maxPixelError = maxPixelError;
+	}
+
+	/**
+	 * @param maxUploadsPerFrame
+	 *            how many built chunks are uploaded to the GPU per frame
+	 */
+	public void setMaxUploadsPerFrame(int maxUploadsPerFrame) {
+		this.maxUploadsPerFrame = maxUploadsPerFrame;
+	}
+
+	/**
+	 * @param sharedVertices
+	 *            whether chunks built from now on emit every grid point once
+	 *            and leave the per triangle colors to the shader
+	 */
+	public void setSharedVertices(boolean sharedVertices) {
+		this.sharedVertices = sharedVertices;
+	}
+
+	/**
+	 * @return the number of chunks picked by the last {@link #update}
+	 */
+	public int getSelectedChunkCount() {
+		return selected.size();
+	}
+
+	/**
+	 * @return the GPU memory taken by all uploaded chunks
+	 */
+	public long getResidentBytes() {
+		return residentBytes;
+	}
+
+	public TerrainGrid getGrid() {
+		return grid;
+	}
+
+	public void cleanup() {
+		for (Node node : resident.keySet()) {
+			node.chunk.cleanup();
+			node.chunk = null;
+		}
+		resident.clear();
+		selected.clear();
+		uploads.clear();
+		residentBytes = 0;
+	}
+
+	private final class Node {
+		final Node parent;
+		final int x0, z0, size, stride;
+		Node[] children;
+
+		/**
+		 * Largest height difference between this node's mesh and the full
+		 * detail grid, including the error of all descendants.
+		 */
+		float error;
+		float minX, minY, minZ, maxX, maxY, maxZ;
+
+		// only touched by the GL thread
+		TerrainChunk chunk;
+		boolean requested;
+		long lastUsed;
+		long selectedFrame;
+		final int[] cullingPlanes = FrustumCuller.createCullingPlanes();
+
+		// handed over from the worker through the upload queue
+		TerrainMeshBuilder builder;
+		Throwable buildError;
+
+		Node(Node parent, int x0, int z0, int size, int stride) {
+			this.parent = parent;
+			this.x0 = x0;
+			this.z0 = z0;
+			this.size = size;
+			this.stride = stride;
+		}
+
+		void computeBounds() {
+			int lastX = Math.min(x0 + size, grid.getWidth() - 1);
+			int lastZ = Math.min(z0 + size, grid.getDepth() - 1);
+			minY = Float.POSITIVE_INFINITY;
+			maxY = Float.NEGATIVE_INFINITY;
+			for (int gz = z0; gz <= lastZ; gz++) {
+				int cz0 = z0 + (gz - z0) / stride * stride;
+				int cz1 = Math.min(cz0 + stride, lastZ);
+				float tz = cz1 == cz0 ? 0 : (float) (gz - cz0) / (cz1 - cz0);
+				for (int gx = x0; gx <= lastX; gx++) {
+					int cx0 = x0 + (gx - x0) / stride * stride;
+					int cx1 = Math.min(cx0 + stride, lastX);
+					float tx = cx1 == cx0 ? 0 : (float) (gx - cx0) / (cx1 - cx0);
+
+					float height = grid.getHeight(gx, gz);
+					minY = Math.min(minY, height);
+					maxY = Math.max(maxY, height);
+
+					float top = lerp(grid.getHeight(cx0, cz0), grid.getHeight(cx1, cz0), tx);
+					float bottom = lerp(grid.getHeight(cx0, cz1), grid.getHeight(cx1, cz1), tx);
+					error = Math.max(error, Math.abs(lerp(top, bottom, tz) - height));
+				}
+			}
+			if (children != null) {
+				for (Node child : children) {
+					error = Math.max(error, child.error);
+				}
+			}
+			minX = grid.getStartX() + x0 * grid.getXStep();
+			maxX = grid.getStartX() + lastX * grid.getXStep();
+			minZ = grid.getStartZ() + z0 * grid.getZStep();
+			maxZ = grid.getStartZ() + lastZ * grid.getZStep();
+		}
+
+		/**
+		 * Seed of the per triangle colors of this node's chunk, so that
+		 * chunks do not repeat each other's pattern.
+		 */
+		int getColorSeed() {
+			long h = colorSeed + ((long) (z0 * grid.getWidth() + x0) * 31 + stride) * 0x9E3779B97F4A7C15L;
+			h = (h ^ (h >>> 32)) * 0xD6E8FEB86659FD93L;
+			return (int) (h ^ (h >>> 32));
+		}
+
+		/**
+		 * Projects the geometric error to the screen at the distance of the
+		 * closest point of the bounding box.
+		 */
+		float getPixelError() {
+			float dx = Math.max(Math.max(minX - localCamera.x, localCamera.x - maxX), 0);
+			float dy = Math.max(Math.max(minY - localCamera.y, localCamera.y - maxY), 0);
+			float dz = Math.max(Math.max(minZ - localCamera.z, localCamera.z - maxZ), 0);
+			float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+			if (distance == 0) {
+				return Float.POSITIVE_INFINITY;
+			}
+			return error / distance * errorToPixels;
+		}
+	}
+
+	private static float lerp(float a, float b, float t) {
+		return a + (b - a) * t;
+	}
+}
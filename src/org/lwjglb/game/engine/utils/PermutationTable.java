@@ -0,0 +1,158 @@
+package org.lwjglb.game.engine.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The seeded permutation of 0..255 that simplex noise hashes its lattice
+ * points with, in the layouts the noise functions read. Tables are immutable
+ * and shared: {@link #forSeed(int)} keeps the most recently used ones, so
+ * noise instances and threads asking for the same seed reuse one table.
+ * <p>
+ * A table is a Fisher–Yates shuffle of 0..255 driven by
+ * {@code java.util.Random} with the seed. Its algorithm is part of the Java
+ * specification, so a seed gives the same table, and the same noise, on
+ * every JVM, thread and run, whether or not the table was cached.
+ */
+public final class PermutationTable {
+
+	/**
+	 * Number of tables kept by {@link #forSeed(int)}.
+	 */
+	public static final int CACHE_SIZE = 64;
+
+	/**
+	 * The seed that asks for a random table, which is never cached.
+	 */
+	public static final int RANDOM_SEED = 0;
+
+	// the (x,y) of the 12 gradients of 3D simplex noise, used for 2D
+	private static final float[] GRAD2_X = { 1, -1, 1, -1, 1, -1, 1, -1, 0, 0, 0, 0 };
+	private static final float[] GRAD2_Y = { 1, 1, -1, -1, 0, 0, 0, 0, 1, -1, 1, -1 };
+
+	private static final Map<Integer, PermutationTable> CACHE = new LinkedHashMap<Integer, PermutationTable>(
+			CACHE_SIZE * 2, .75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, PermutationTable> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	private final int seed;
+
+	private final byte[] bytes;
+
+	private final int[] perm;
+
+	private final int[] permMod12;
+
+	private final float[] gradX;
+
+	private final float[] gradY;
+
+	private PermutationTable(int seed, byte[] bytes) {
+		this.seed = seed;
+		this.bytes = bytes;
+		perm = new int[512];
+		permMod12 = new int[512];
+		gradX = new float[512];
+		gradY = new float[512];
+		for (int i = 0; i < 512; i++) {
+			perm[i] = bytes[i & 255] & 0xff;
+			permMod12[i] = perm[i] % 12;
+			gradX[i] = GRAD2_X[permMod12[i]];
+			gradY[i] = GRAD2_Y[permMod12[i]];
+		}
+	}
+
+	/**
+	 * @param seed
+	 *            the seed of the shuffle, {@link #RANDOM_SEED} for a random
+	 *            one
+	 * @return the table of the seed, shared with everyone asking for it
+	 */
+	public static PermutationTable forSeed(int seed) {
+		if (seed == RANDOM_SEED) {
+			int randomSeed;
+			do {
+				randomSeed = new Random().nextInt();
+			} while (randomSeed == RANDOM_SEED);
+			return create(randomSeed);
+		}
+		synchronized (CACHE) {
+			PermutationTable table = CACHE.get(seed);
+			if (table == null) {
+				table = create(seed);
+				CACHE.put(seed, table);
+			}
+			return table;
+		}
+	}
+
+	private static PermutationTable create(int seed) {
+		byte[] bytes = new byte[256];
+		for (int i = 0; i < 256; i++) {
+			bytes[i] = (byte) i;
+		}
+		Random random = new Random(seed);
+		for (int i = 255; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			byte swap = bytes[i];
+			bytes[i] = bytes[j];
+			bytes[j] = swap;
+		}
+		return new PermutationTable(seed, bytes);
+	}
+
+	/**
+	 * @return the seed the table was shuffled with, a random one if it was
+	 *         asked for with {@link #RANDOM_SEED}
+	 */
+	public int getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return a copy of the permutation, 256 unsigned bytes
+	 */
+	public byte[] getBytes() {
+		return bytes.clone();
+	}
+
+	// the layouts read by the noise functions. The arrays are shared between
+	// all users of the table and must not be modified, so they are only
+	// handed out within this package.
+
+	/**
+	 * @return the permutation repeated twice, 512 entries, so that
+	 *         {@code perm[i + perm[j]]} needs no wrapping for i, j below 256
+	 */
+	int[] getPerm() {
+		return perm;
+	}
+
+	/**
+	 * @return {@link #getPerm()} modulo 12, the gradient index of 2D and 3D
+	 *         noise
+	 */
+	int[] getPermMod12() {
+		return permMod12;
+	}
+
+	/**
+	 * @return x of the 2D gradient of every {@link #getPermMod12()} entry
+	 */
+	float[] getGradX() {
+		return gradX;
+	}
+
+	/**
+	 * @return y of the 2D gradient of every {@link #getPermMod12()} entry
+	 */
+	float[] getGradY() {
+		return gradY;
+	}
+}
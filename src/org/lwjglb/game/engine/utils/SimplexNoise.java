@@ -1,5 +1,6 @@
 package org.lwjglb.game.engine.utils;
 
+import java.util.Arrays;
 import java.util.Random;
 
 public class SimplexNoise {
@@ -8,6 +9,10 @@ public class SimplexNoise {
 	double[] frequencys;
 	double[] amplitudes;
 
+	// per octave factors of the float batch evaluation
+	float[] inverseFrequencies;
+	float[] amplitudesF;
+
 	int largestFeature;
 	double persistence;
 	int seed;
@@ -24,6 +29,8 @@ public class SimplexNoise {
 		octaves = new SimplexNoise_octave[numberOfOctaves];
 		frequencys = new double[numberOfOctaves];
 		amplitudes = new double[numberOfOctaves];
+		inverseFrequencies = new float[numberOfOctaves];
+		amplitudesF = new float[numberOfOctaves];
 
 		Random rnd = new Random(seed);
 
@@ -32,6 +39,8 @@ public class SimplexNoise {
 
 			frequencys[i] = Math.pow(2, i);
 			amplitudes[i] = Math.pow(persistence, octaves.length - i);
+			inverseFrequencies[i] = (float) (1 / frequencys[i]);
+			amplitudesF[i] = (float) amplitudes[i];
 
 		}
 
@@ -62,13 +71,43 @@ public class SimplexNoise {
 		double result = 0;
 
 		for (int i = 0; i < octaves.length; i++) {
-			double frequency = Math.pow(2, i);
-			double amplitude = Math.pow(persistence, octaves.length - i);
+			double frequency = frequencys[i];
 
-			result = result + octaves[i].noise(x / frequency, y / frequency, z / frequency) * amplitude;
+			result = result + octaves[i].noise(x / frequency, y / frequency, z / frequency) * amplitudes[i];
 		}
 
 		return result;
 
 	}
+
+	/**
+	 * Evaluates the 2D noise on a grid of {@code w} by {@code h} points, in
+	 * float precision. Point {@code (i, j)} is {@code (x0 + i * dx, z0 + j * dz)}
+	 * and is written to {@code out[j * w + i]}.
+	 * 
+	 * @see #fillNoise(float[], int, float, float, float, float, int, int)
+	 */
+	public void fillNoise(float[] out, float x0, float z0, float dx, float dz, int w, int h) {
+		fillNoise(out, 0, x0, z0, dx, dz, w, h);
+	}
+
+	/**
+	 * Evaluates the 2D noise on a grid of {@code w} by {@code h} points into
+	 * {@code out} starting at {@code offset}. Each row is computed octave by
+	 * octave, looking up the gradients once per simplex the row passes
+	 * through. The values match {@link #getNoise(double, double)} up to float
+	 * rounding. Safe to call from several threads on disjoint parts of
+	 * {@code out}.
+	 */
+	public void fillNoise(float[] out, int offset, float x0, float z0, float dx, float dz, int w, int h) {
+		for (int j = 0; j < h; j++) {
+			int row = offset + j * w;
+			float z = z0 + j * dz;
+			Arrays.fill(out, row, row + w, 0f);
+			for (int i = 0; i < octaves.length; i++) {
+				float scale = inverseFrequencies[i];
+				octaves[i].addNoiseRow(out, row, w, x0 * scale, z * scale, dx * scale, amplitudesF[i]);
+			}
+		}
+	}
 }
\ No newline at end of file
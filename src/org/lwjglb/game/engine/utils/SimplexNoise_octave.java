@@ -1,7 +1,5 @@
 package org.lwjglb.game.engine.utils;
 
-import java.util.Random;
-
 
 /*
  * A speed-improved simplex noise algorithm for 2D, 3D and 4D in Java.
@@ -22,8 +20,8 @@ import java.util.Random;
 
 public class SimplexNoise_octave {  // Simplex noise in 2D, 3D and 4D
 
-  public static int RANDOMSEED=0;
-  private static int NUMBEROFSWAPS=400;  
+  // A seed of 0 asks for a random permutation
+  public static int RANDOMSEED=PermutationTable.RANDOM_SEED;
 
   private static Grad grad3[] = {new Grad(1,1,0),new Grad(-1,1,0),new Grad(1,-1,0),new Grad(-1,-1,0),
                                  new Grad(1,0,1),new Grad(-1,0,1),new Grad(1,0,-1),new Grad(-1,0,-1),
@@ -38,52 +36,20 @@ public class SimplexNoise_octave {  // Simplex noise in 2D, 3D and 4D
                    new Grad(1,1,1,0),new Grad(1,1,-1,0),new Grad(1,-1,1,0),new Grad(1,-1,-1,0),
                    new Grad(-1,1,1,0),new Grad(-1,1,-1,0),new Grad(-1,-1,1,0),new Grad(-1,-1,-1,0)};
 
-  private static short p_supply[] = {151,160,137,91,90,15, //this contains all the numbers between 0 and 255, these are put in a random order depending upon the seed
-  131,13,201,95,96,53,194,233,7,225,140,36,103,30,69,142,8,99,37,240,21,10,23,
-  190, 6,148,247,120,234,75,0,26,197,62,94,252,219,203,117,35,11,32,57,177,33,
-  88,237,149,56,87,174,20,125,136,171,168, 68,175,74,165,71,134,139,48,27,166,
-  77,146,158,231,83,111,229,122,60,211,133,230,220,105,92,41,55,46,245,40,244,
-  102,143,54, 65,25,63,161, 1,216,80,73,209,76,132,187,208, 89,18,169,200,196,
-  135,130,116,188,159,86,164,100,109,198,173,186, 3,64,52,217,226,250,124,123,
-  5,202,38,147,118,126,255,82,85,212,207,206,59,227,47,16,58,17,182,189,28,42,
-  223,183,170,213,119,248,152, 2,44,154,163, 70,221,153,101,155,167, 43,172,9,
-  129,22,39,253, 19,98,108,110,79,113,224,232,178,185, 112,104,218,246,97,228,
-  251,34,242,193,238,210,144,12,191,179,162,241, 81,51,145,235,249,14,239,107,
-  49,192,214, 31,181,199,106,157,184, 84,204,176,115,121,50,45,127, 4,150,254,
-  138,236,205,93,222,114,67,29,24,72,243,141,128,195,78,66,215,61,156,180};
-
-  private short p[]=new short[p_supply.length];
+  // The permutation, doubled to remove the need for index wrapping, and the
+  // gradients it selects. Shared between all octaves with the same seed.
+  private final int perm[];
+  private final int permMod12[];
+  // The 2D gradient of every permMod12 entry, saving a lookup per corner
+  private final float permGradX[];
+  private final float permGradY[];
 
-  // To remove the need for index wrapping, double the permutation table length
-  private short perm[] = new short[512];
-  private short permMod12[] = new short[512];
   public SimplexNoise_octave(int seed) {
-    p=p_supply.clone();
-
-    if (seed==RANDOMSEED){
-        Random rand=new Random();
-        seed=rand.nextInt();
-    }
-
-    //the random for the swaps
-    Random rand=new Random(seed);
-
-    //the seed determines the swaps that occur between the default order and the order we're actually going to use
-    for(int i=0;i<NUMBEROFSWAPS;i++){
-        int swapFrom=rand.nextInt(p.length);
-        int swapTo=rand.nextInt(p.length);
-
-        short temp=p[swapFrom];
-        p[swapFrom]=p[swapTo];
-        p[swapTo]=temp;
-    }
-
-
-    for(int i=0; i<512; i++)
-    {
-      perm[i]=p[i & 255];
-      permMod12[i] = (short)(perm[i] % 12);
-    }
+    PermutationTable table = PermutationTable.forSeed(seed);
+    perm = table.getPerm();
+    permMod12 = table.getPermMod12();
+    permGradX = table.getGradX();
+    permGradY = table.getGradY();
   }
 
   // Skewing and unskewing factors for 2, 3, and 4 dimensions
@@ -93,6 +59,8 @@ public class SimplexNoise_octave {  // Simplex noise in 2D, 3D and 4D
   private static final double G3 = 1.0/6.0;
   private static final double F4 = (Math.sqrt(5.0)-1.0)/4.0;
   private static final double G4 = (5.0-Math.sqrt(5.0))/20.0;
+  private static final float F2F = (float)F2;
+  private static final float G2F = (float)G2;
 
   // This method is a *lot* faster than using (int)Math.floor(x)
   private static int fastfloor(double x) {
@@ -164,6 +132,91 @@ public class SimplexNoise_octave {  // Simplex noise in 2D, 3D and 4D
     return 70.0 * (n0 + n1 + n2);
   }
 
+  // 2D simplex noise along a row, in float precision, added to out scaled by
+  // amplitude: out[offset+k] += amplitude * noise(xin + k*dx, yin).
+  // Along a row the points fall into runs that share their simplex: the same
+  // cell and the same middle corner. The corners and their gradients are
+  // looked up once per run, the run itself is a straight line loop over the
+  // x offsets to the three corners with nothing to gather.
+  public void addNoiseRow(float[] out, int offset, int count, float xin, float yin, float dx, float amplitude) {
+    final int perm[] = this.perm;
+    final float gradX[] = permGradX;
+    final float gradY[] = permGradY;
+    final float scale = 70f * amplitude;
+    int k = 0;
+    while(k<count) {
+      // the simplex of the first point of the run
+      float x = xin + k*dx;
+      float s = (x+yin)*F2F;
+      int i = fastfloor(x+s);
+      int j = fastfloor(yin+s);
+      float t = (i+j)*G2F;
+      float cx = i-t; // x of the cell origin
+      float y0 = yin-(j-t);
+      int i1 = x-cx>y0 ? 1 : 0;
+      int j1 = 1-i1;
+
+      // the run ends where i, j or the middle corner change. Guess the end
+      // from where the row crosses those lines, then move it so that every
+      // point agrees with the per point computation above.
+      int end = k+1;
+      if(dx>0) {
+        float bound = Math.min((i+1-yin*F2F)/(1f+F2F), (j+1-yin*(1f+F2F))/F2F);
+        if(i1==0) bound = Math.min(bound, cx+y0);
+        end = Math.max(k+1, Math.min(count, (int)Math.ceil((bound-xin)/dx)));
+        while(end>k+1 && !inSimplex(xin+(end-1)*dx, yin, i, j, cx, y0, i1)) end--;
+      }
+      while(end<count && inSimplex(xin+end*dx, yin, i, j, cx, y0, i1)) end++;
+
+      int ii = i & 255;
+      int jj = j & 255;
+      int gi0 = ii+perm[jj];
+      int gi1 = ii+i1+perm[jj+j1];
+      int gi2 = ii+1+perm[jj+1];
+      float y1 = y0 - j1 + G2F;
+      float y2 = y0 - 1f + 2f * G2F;
+      // the parts of the corner terms that stay the same along the run
+      float r0 = 0.5f - y0*y0;
+      float r1 = 0.5f - y1*y1;
+      float r2 = 0.5f - y2*y2;
+      float gx0 = gradX[gi0], gy0 = gradY[gi0]*y0;
+      float gx1 = gradX[gi1], gy1 = gradY[gi1]*y1;
+      float gx2 = gradX[gi2], gy2 = gradY[gi2]*y2;
+      float c1 = cx + i1 - G2F;
+      float c2 = cx + 1f - 2f * G2F;
+      for(int q=k; q<end; q++) {
+        float xq = xin + q*dx;
+        float x0 = xq-cx;
+        float x1 = xq-c1;
+        float x2 = xq-c2;
+        float t0 = Math.max(r0 - x0*x0, 0f);
+        float t1 = Math.max(r1 - x1*x1, 0f);
+        float t2 = Math.max(r2 - x2*x2, 0f);
+        t0 *= t0;
+        t1 *= t1;
+        t2 *= t2;
+        float n0 = t0 * t0 * (gx0*x0 + gy0);
+        float n1 = t1 * t1 * (gx1*x1 + gy1);
+        float n2 = t2 * t2 * (gx2*x2 + gy2);
+        out[offset+q] += scale * (n0 + n1 + n2);
+      }
+      k = end;
+    }
+  }
+
+  // whether the point (x, yin) is in the simplex of cell (i, j) with the
+  // middle corner i1, computed like at the start of a run in addNoiseRow
+  private static boolean inSimplex(float x, float yin, int i, int j, float cx, float y0, int i1) {
+    float s = (x+yin)*F2F;
+    if(fastfloor(x+s)!=i || fastfloor(yin+s)!=j) return false;
+    return (x-cx>y0 ? 1 : 0)==i1;
+  }
+
+  private static int fastfloor(float x) {
+    int xi = (int)x;
+    return x<xi ? xi-1 : xi;
+  }
+
 
   // 3D simplex noise
   public double noise(double xin, double yin, double zin) {
@@ -2,7 +2,9 @@ package org.lwjglb.game.engine.utils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.util.Scanner;
@@ -21,6 +23,27 @@ public class Utils {
 		return result;
 	}
 
+	/**
+	 * Reads a whole resource into a heap buffer, positioned at zero.
+	 */
+	public static ByteBuffer loadResourceBytes(String fileName) throws IOException {
+		try (InputStream in = Utils.class.getResourceAsStream(fileName)) {
+			if (in == null) {
+				throw new IOException("Resource not found: " + fileName);
+			}
+			byte[] bytes = new byte[Math.max(in.available(), 8192)];
+			int length = 0;
+			int read;
+			while ((read = in.read(bytes, length, bytes.length - length)) != -1) {
+				length += read;
+				if (length == bytes.length) {
+					bytes = Arrays.copyOf(bytes, bytes.length * 2);
+				}
+			}
+			return ByteBuffer.wrap(bytes, 0, length);
+		}
+	}
+
 	public static Random getRandom() {
 		return random;
 	}
@@ -1,5 +1,6 @@
 package org.lwjglb.game.engine.water;
 
+import org.lwjglb.game.engine.SceneBuffers;
 import org.lwjglb.game.engine.ShaderProgram;
 
 public class WaterShader extends ShaderProgram {
@@ -10,16 +11,12 @@ public class WaterShader extends ShaderProgram {
 	// shader
 	public static final float MAX_HEIGHT_DIF = .001f + .002f + .0008f + .003f;
 
-	public WaterShader(int maxPointLights) throws Exception {
+	public WaterShader() throws Exception {
 		super(VERTEX_FILE, FRAGMENT_FILE);
 
-		createUniform("projectionMatrix");
-		createUniform("modelViewMatrix");
-		createUniform("ambientLight");
-		createUniform("specularPower");
+		createUniform("modelMatrix");
 		createUniform("reflectance");
-		createPointLightListUniform("pointLights", maxPointLights);
-		createDirectionalLightUniform("directionalLight");
+		SceneBuffers.bindBlocks(this);
 		createUniform("time");
 		createUniform("refractTex");
 		createUniform("reflectTex");
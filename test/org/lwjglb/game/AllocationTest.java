@@ -0,0 +1,151 @@
+package org.lwjglb.game;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.lwjglb.game.engine.Camera;
+import org.lwjglb.game.engine.FrustumCuller;
+import org.lwjglb.game.engine.SceneBuffers;
+import org.lwjglb.game.engine.Std140;
+import org.lwjglb.game.engine.Transformation;
+import org.lwjglb.game.engine.lighting.DirectionalLight;
+import org.lwjglb.game.engine.lighting.PointLight;
+import org.lwjglb.game.engine.lighting.ViewSpaceLights;
+
+/**
+ * Checks that preparing a frame allocates nothing once warmed up. Runs the CPU
+ * side of {@link Renderer#render}: moving the cameras, culling the models,
+ * transforming the lights, packing the uniform blocks and writing the model
+ * matrices the way {@code ShaderProgram} does. The GL calls themselves need a
+ * context and are left out. Run as a program, it throws if any bytes were
+ * allocated. On Java 9 and later JOML needs
+ * {@code --add-opens java.base/java.nio=ALL-UNNAMED} to write into buffers.
+ */
+public class AllocationTest {
+
+	private static final int MODELS = 1000;
+
+	private static final int MAX_POINT_LIGHTS = 5;
+
+	private static final int WARMUP_FRAMES = 20000;
+
+	private static final int FRAMES = 2000;
+
+	private final Transformation transformation = new Transformation();
+
+	private final Camera camera = new Camera();
+
+	private final Camera reflectionCamera = new Camera();
+
+	private final FrustumCuller[] cullers = { new FrustumCuller(0), new FrustumCuller(1), new FrustumCuller(2) };
+
+	private final Vector4f[] clipPlanes = { new Vector4f(0, -1, 0, 1), new Vector4f(0, 1, 0, -1),
+			new Vector4f(0, 0, 0, 0) };
+
+	private final ViewSpaceLights lights = new ViewSpaceLights(MAX_POINT_LIGHTS);
+
+	private final PointLight[] pointLights = new PointLight[MAX_POINT_LIGHTS];
+
+	private final DirectionalLight directionalLight = new DirectionalLight(new Vector3f(0, -1, 0),
+			new Vector3f(1, 1, 1), 1);
+
+	private final Vector3f ambientLight = new Vector3f(.3f, .3f, .3f);
+
+	private final GameModel[] models = new GameModel[MODELS];
+
+	private final Std140 frameBlock = new Std140(ByteBuffer.allocateDirect(256).order(ByteOrder.nativeOrder()));
+
+	private final Std140 passBlock = new Std140(ByteBuffer
+			.allocateDirect(SceneBuffers.getPassBlockSize(MAX_POINT_LIGHTS)).order(ByteOrder.nativeOrder()));
+
+	/**
+	 * Like the matrix buffer of a shader program.
+	 */
+	private final FloatBuffer matrixBuffer = ByteBuffer.allocateDirect(16 * 4).order(ByteOrder.nativeOrder())
+			.asFloatBuffer();
+
+	private double checksum;
+
+	private AllocationTest() {
+		for (int i = 0; i < MAX_POINT_LIGHTS; i++) {
+			pointLights[i] = new PointLight(new Vector3f(1, 1, 1), new Vector3f(i, 1, -i), 1);
+		}
+		for (int i = 0; i < MODELS; i++) {
+			models[i] = new GameModel(null, .5f);
+			models[i].setPosition(i % 40 - 20, 0, -(i / 40));
+		}
+		camera.setPosition(0, 2, 5);
+	}
+
+	public static void main(String[] args) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		AllocationTest test = new AllocationTest();
+		for (int frame = 0; frame < WARMUP_FRAMES; frame++) {
+			test.prepareFrame(frame);
+		}
+
+		// what reading the counter costs on its own
+		long before = threads.getThreadAllocatedBytes(thread);
+		long overhead = threads.getThreadAllocatedBytes(thread) - before;
+
+		before = threads.getThreadAllocatedBytes(thread);
+		for (int frame = 0; frame < FRAMES; frame++) {
+			test.prepareFrame(frame);
+		}
+		long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+		if (allocated > 0) {
+			throw new AssertionError(FRAMES + " frames allocated " + allocated + " bytes");
+		}
+		System.out.println("AllocationTest passed (" + test.checksum + ")");
+	}
+
+	private void prepareFrame(int frame) {
+		camera.movePosition(.01f, 0, -.01f);
+		camera.moveRotation(0, .1f, 0);
+		// some models move every frame, which recomputes their transformation
+		models[frame % MODELS].setRotation(0, frame % 360, 0);
+
+		Matrix4f projectionMatrix = transformation.getProjectionMatrix((float) Math.toRadians(60), 800, 600, .01f,
+				1000);
+		SceneBuffers.writeFrame(frameBlock.position(0), projectionMatrix, ambientLight, 8);
+		lights.set(pointLights, directionalLight);
+
+		Vector3f position = camera.getPosition();
+		Vector3f rotation = camera.getRotation();
+		reflectionCamera.setPosition(position.x, -position.y, position.z);
+		reflectionCamera.setRotation(-rotation.x, rotation.y, rotation.z);
+
+		preparePass(camera, projectionMatrix, 0);
+		preparePass(reflectionCamera, projectionMatrix, 1);
+		preparePass(camera, projectionMatrix, 2);
+	}
+
+	private void preparePass(Camera passCamera, Matrix4f projectionMatrix, int pass) {
+		Matrix4f viewMatrix = transformation.getViewMatrix(passCamera);
+		FrustumCuller culler = cullers[pass];
+		culler.update(transformation.getViewProjectionMatrix(projectionMatrix, viewMatrix), clipPlanes[pass]);
+		lights.transform(viewMatrix);
+		SceneBuffers.writePass(passBlock.position(0), viewMatrix, clipPlanes[pass], lights, MAX_POINT_LIGHTS);
+
+		for (GameModel model : models) {
+			// meshes need a context, so cull a unit box around the model like
+			// isVisible culls its world bounds
+			Vector3f p = model.getPosition();
+			if (culler.intersect(p.x - 1, p.y - 1, p.z - 1, p.x + 1, p.y + 1, p.z + 1, FrustumCuller.ALL_PLANES,
+					model.getCullingPlanes()) >= 0) {
+				culler.countCulled();
+				continue;
+			}
+			culler.countVisible();
+			transformation.getModelMatrix(model).get(matrixBuffer);
+			checksum += matrixBuffer.get(12);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package org.lwjglb.game.engine;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks that {@link MeshOptimizer} keeps every triangle of a mesh, with its
+ * winding and vertex attributes, while improving the vertex cache use. Run as
+ * a program, it throws on the first failure.
+ */
+public class MeshOptimizerTest {
+
+	private static final int GRID = 100;
+
+	public static void main(String[] args) {
+		testStats();
+		testShuffledGrid(false);
+		testShuffledGrid(true);
+		System.out.println("MeshOptimizerTest passed");
+	}
+
+	private static void testStats() {
+		MeshOptimizer.CacheStats stats = MeshOptimizer.computeStats(new int[] { 0, 1, 2 }, 3, 16);
+		check(stats.getAcmr() == 3 && stats.getAtvr() == 1, "one triangle " + stats);
+		stats = MeshOptimizer.computeStats(new int[] { 0, 1, 2, 2, 1, 3 }, 4, 16);
+		check(stats.getAcmr() == 2 && stats.getAtvr() == 1, "two triangles sharing an edge " + stats);
+		// a cache of 3 has evicted vertex 0 by the time it is used again
+		stats = MeshOptimizer.computeStats(new int[] { 0, 1, 2, 3, 4, 5, 0, 1, 2 }, 6, 3);
+		check(stats.getAcmr() == 3, "evicted " + stats);
+	}
+
+	/**
+	 * A grid whose triangles are shuffled, with one vertex no triangle uses.
+	 * The first color component of every vertex holds its original index, so
+	 * the triangles can be followed through the reordering.
+	 */
+	private static void testShuffledGrid(boolean optimizeOverdraw) {
+		int vertexCount = GRID * GRID + 1;
+		float[] positions = new float[vertexCount * 3];
+		float[] colors = new float[vertexCount * 3];
+		float[] normals = new float[vertexCount * 3];
+		for (int v = 0; v < vertexCount; v++) {
+			positions[v * 3] = v % GRID;
+			positions[v * 3 + 1] = (float) Math.sin(v);
+			positions[v * 3 + 2] = v / GRID;
+			colors[v * 3] = v;
+			normals[v * 3 + 1] = v;
+		}
+		int[][] triangles = new int[(GRID - 1) * (GRID - 1) * 2][];
+		int t = 0;
+		for (int z = 0; z < GRID - 1; z++) {
+			for (int x = 0; x < GRID - 1; x++) {
+				int v = z * GRID + x;
+				triangles[t++] = new int[] { v, v + GRID, v + 1 };
+				triangles[t++] = new int[] { v + 1, v + GRID, v + GRID + 1 };
+			}
+		}
+		Random random = new Random(1);
+		for (int i = triangles.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int[] swap = triangles[i];
+			triangles[i] = triangles[j];
+			triangles[j] = swap;
+		}
+		int[] indices = new int[triangles.length * 3];
+		for (int i = 0; i < triangles.length; i++) {
+			System.arraycopy(triangles[i], 0, indices, i * 3, 3);
+		}
+		int[] original = indices.clone();
+
+		MeshOptimizer optimizer = new MeshOptimizer(positions, colors, normals, indices);
+		optimizer.setOptimizeOverdraw(optimizeOverdraw);
+		optimizer.optimize();
+		check(Arrays.equals(indices, original), "the indices passed in are not modified");
+
+		int[] optimized = optimizer.getIndices();
+		float[] newPositions = optimizer.getPositions();
+		float[] newColors = optimizer.getColors();
+		float[] newNormals = optimizer.getNormals();
+		check(newPositions.length == (vertexCount - 1) * 3, "the unused vertex is dropped");
+
+		// every vertex keeps its attributes
+		for (int v = 0; v < vertexCount - 1; v++) {
+			int old = (int) newColors[v * 3];
+			check(newPositions[v * 3] == positions[old * 3] && newPositions[v * 3 + 1] == positions[old * 3 + 1]
+					&& newPositions[v * 3 + 2] == positions[old * 3 + 2], "position of vertex " + old);
+			check(newNormals[v * 3 + 1] == old, "normal of vertex " + old);
+		}
+
+		// the same triangles with the same winding, as rotations to the
+		// smallest original index
+		long[] before = new long[triangles.length];
+		long[] after = new long[triangles.length];
+		for (int i = 0; i < triangles.length; i++) {
+			before[i] = key(original[i * 3], original[i * 3 + 1], original[i * 3 + 2]);
+			after[i] = key((int) newColors[optimized[i * 3] * 3], (int) newColors[optimized[i * 3 + 1] * 3],
+					(int) newColors[optimized[i * 3 + 2] * 3]);
+		}
+		Arrays.sort(before);
+		Arrays.sort(after);
+		check(Arrays.equals(before, after), "triangles changed");
+
+		// vertices are numbered by first use
+		int next = 0;
+		for (int v : optimized) {
+			check(v <= next, "vertex " + v + " used before " + next);
+			if (v == next) {
+				next++;
+			}
+		}
+
+		float acmrBefore = optimizer.getStatsBefore().getAcmr();
+		float acmrAfter = optimizer.getStatsAfter().getAcmr();
+		check(acmrBefore > 2, "shuffled ACMR " + acmrBefore);
+		check(acmrAfter < (optimizeOverdraw ? .8f : .75f), "optimized ACMR " + acmrAfter);
+	}
+
+	private static long key(int a, int b, int c) {
+		if (b < a && b < c) {
+			return key(b, c, a);
+		}
+		if (c < a && c < b) {
+			return key(c, a, b);
+		}
+		return ((long) a * GRID * GRID + b) * GRID * GRID + c;
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+}
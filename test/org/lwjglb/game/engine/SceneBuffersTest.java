@@ -0,0 +1,119 @@
+package org.lwjglb.game.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.lwjglb.game.engine.lighting.DirectionalLight;
+import org.lwjglb.game.engine.lighting.PointLight;
+import org.lwjglb.game.engine.lighting.ViewSpaceLights;
+
+/**
+ * Checks the std140 layout of {@link Std140} and of the blocks packed by
+ * {@link SceneBuffers} against the offsets GLSL gives the members declared in
+ * the shaders. Run as a program, it throws on the first failure. On Java 9
+ * and later JOML needs {@code --add-opens java.base/java.nio=ALL-UNNAMED} to
+ * write matrices into buffers.
+ */
+public class SceneBuffersTest {
+
+	private static final int MAX_POINT_LIGHTS = 5;
+
+	public static void main(String[] args) {
+		testAlignment();
+		testFrameBlock();
+		testPassBlock();
+		System.out.println("SceneBuffersTest passed");
+	}
+
+	private static void testAlignment() {
+		Std140 out = new Std140(allocate(64));
+		out.putFloat(1);
+		check(out.position() == 4, "float");
+		out.putVec3(2, 3, 4);
+		check(out.position() == 28, "vec3 aligned to 16");
+		out.putFloat(5);
+		check(out.position() == 32, "float in the w of the vec3");
+		out.putFloat(6).putVec4(7, 8, 9, 10);
+		check(out.position() == 64, "vec4 aligned to 16");
+		check(out.getBuffer().getFloat(28) == 5 && out.getBuffer().getFloat(48) == 7, "values");
+		check(out.getBuffer().getFloat(36) == 0, "padding is zero");
+
+		out.position(4).beginStruct();
+		check(out.position() == 16, "struct begins aligned");
+		out.putFloat(1).endStruct();
+		check(out.position() == 32, "struct ends padded");
+	}
+
+	private static void testFrameBlock() {
+		Std140 out = new Std140(allocate(SceneBuffers.FRAME_BLOCK_SIZE));
+		Matrix4f projection = new Matrix4f().perspective(1, 1.5f, .1f, 100);
+		SceneBuffers.writeFrame(out, projection, new Vector3f(.1f, .2f, .3f), 8);
+		ByteBuffer buffer = out.getBuffer();
+		check(out.position() == SceneBuffers.FRAME_BLOCK_SIZE, "frame block size " + out.position());
+		// column major
+		check(buffer.getFloat(4) == projection.m01() && buffer.getFloat(16) == projection.m10(), "projection");
+		check(buffer.getFloat(64) == .1f && buffer.getFloat(72) == .3f, "ambient light");
+		check(buffer.getFloat(76) == 8, "specular power");
+	}
+
+	private static void testPassBlock() {
+		ViewSpaceLights lights = new ViewSpaceLights(MAX_POINT_LIGHTS);
+		PointLight light = new PointLight(new Vector3f(1, 2, 3), new Vector3f(1, 1, 1), 7,
+				new PointLight.Attenuation(8, 9, 10));
+		lights.set(new PointLight[] { light, light },
+				new DirectionalLight(new Vector3f(0, 1, 0), new Vector3f(4, 5, 6), 11));
+		Matrix4f view = new Matrix4f().translate(1, 2, 3).rotateY(.5f);
+		lights.transform(view);
+
+		int size = SceneBuffers.getPassBlockSize(MAX_POINT_LIGHTS);
+		ByteBuffer buffer = allocate(size);
+		// stale data in the buffer must not leak into unused light slots
+		for (int i = 0; i < size; i++) {
+			buffer.put(i, (byte) 0x7f);
+		}
+		Std140 out = new Std140(buffer);
+		Vector4f clipPlane = new Vector4f(0, 1, 0, -2);
+		SceneBuffers.writePass(out, view, clipPlane, lights, MAX_POINT_LIGHTS);
+		check(out.position() == size, "pass block size " + out.position());
+
+		check(buffer.getFloat(48) == view.m30(), "view matrix");
+		check(buffer.getFloat(64 + 4) == 1 && buffer.getFloat(64 + 12) == -2, "clip plane");
+
+		Vector3f viewPosition = view.transformPosition(new Vector3f(1, 1, 1));
+		for (int i = 0; i < 2; i++) {
+			int base = 80 + i * SceneBuffers.POINT_LIGHT_SIZE;
+			check(buffer.getFloat(base) == 1 && buffer.getFloat(base + 8) == 3, "colour of light " + i);
+			check(Math.abs(buffer.getFloat(base + 16) - viewPosition.x) < 1e-5f
+					&& Math.abs(buffer.getFloat(base + 24) - viewPosition.z) < 1e-5f, "position of light " + i);
+			check(buffer.getFloat(base + 28) == 7, "intensity of light " + i);
+			check(buffer.getFloat(base + 32) == 8 && buffer.getFloat(base + 36) == 9
+					&& buffer.getFloat(base + 40) == 10, "attenuation of light " + i);
+		}
+		for (int i = 2; i < MAX_POINT_LIGHTS; i++) {
+			int base = 80 + i * SceneBuffers.POINT_LIGHT_SIZE;
+			for (int b = 0; b < SceneBuffers.POINT_LIGHT_SIZE; b++) {
+				check(buffer.get(base + b) == 0, "unused light " + i + " is zero");
+			}
+		}
+
+		int directional = 80 + MAX_POINT_LIGHTS * SceneBuffers.POINT_LIGHT_SIZE;
+		Vector3f viewDirection = view.transformDirection(new Vector3f(0, 1, 0));
+		check(buffer.getFloat(directional) == 4 && buffer.getFloat(directional + 8) == 6, "directional colour");
+		check(Math.abs(buffer.getFloat(directional + 16) - viewDirection.x) < 1e-5f
+				&& Math.abs(buffer.getFloat(directional + 20) - viewDirection.y) < 1e-5f, "directional direction");
+		check(buffer.getFloat(directional + 28) == 11, "directional intensity");
+	}
+
+	private static ByteBuffer allocate(int size) {
+		return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package org.lwjglb.game.engine;
+
+import java.util.Random;
+
+/**
+ * Checks the round trip precision of the packing routines of
+ * {@link VertexFormat}. Run as a program, it throws on the first failure.
+ */
+public class VertexFormatTest {
+
+	public static void main(String[] args) {
+		testHalfRoundTrip();
+		testHalfRounding();
+		testHalfSpecialValues();
+		testNormals();
+		testByteColors();
+		testHalfPrecise();
+		System.out.println("VertexFormatTest passed");
+	}
+
+	/**
+	 * Every half except NaNs converts to a float and back unchanged.
+	 */
+	private static void testHalfRoundTrip() {
+		for (int h = 0; h < 0x10000; h++) {
+			short half = (short) h;
+			if ((h & 0x7c00) == 0x7c00 && (h & 0x3ff) != 0) {
+				check(Float.isNaN(VertexFormat.fromHalf(half)), "NaN half " + hex(h));
+				continue;
+			}
+			check(VertexFormat.toHalf(VertexFormat.fromHalf(half)) == half, "round trip of half " + hex(h));
+		}
+	}
+
+	/**
+	 * Floats round to the nearest half, ties to the even one. Compares with
+	 * the neighbouring halves of the result.
+	 */
+	private static void testHalfRounding() {
+		Random random = new Random(1);
+		for (int i = 0; i < 1000000; i++) {
+			// uniform over the exponents halves can represent and a bit more
+			float f = Float.intBitsToFloat(0x32000000 + random.nextInt(0x48000000 - 0x32000000));
+			if (random.nextBoolean()) {
+				f = -f;
+			}
+			checkNearest(f);
+		}
+		// ties between every pair of neighbouring positive halves
+		for (int h = 0; h < 0x7bff; h++) {
+			double low = VertexFormat.fromHalf((short) h);
+			double high = VertexFormat.fromHalf((short) (h + 1));
+			float tie = (float) ((low + high) / 2);
+			int even = (h & 1) == 0 ? h : h + 1;
+			check(VertexFormat.toHalf(tie) == even, "tie " + tie + " rounds to " + hex(even));
+			check(VertexFormat.toHalf(-tie) == (short) (even | 0x8000), "tie " + -tie + " rounds to even");
+		}
+		// the largest error of a normal half is half a step, 2^-11 relative
+		double maxError = 0;
+		for (int i = 0; i < 100000; i++) {
+			float f = 0x1p-14f + random.nextFloat() * 60000;
+			maxError = Math.max(maxError, Math.abs(VertexFormat.fromHalf(VertexFormat.toHalf(f)) - f) / f);
+		}
+		check(maxError <= 0x1p-11, "relative error " + maxError);
+	}
+
+	private static void checkNearest(float f) {
+		short half = VertexFormat.toHalf(f);
+		double back = VertexFormat.fromHalf(half);
+		if (Float.isInfinite((float) back)) {
+			check(Math.abs(f) >= 65520, f + " overflows");
+			return;
+		}
+		double error = Math.abs(back - f);
+		int h = half & 0x7fff;
+		if (h > 0) {
+			double lower = VertexFormat.fromHalf((short) (half - 1));
+			check(Math.abs(lower - f) >= error, f + " is nearer to " + lower + " than " + back);
+		}
+		if (h < 0x7bff) {
+			double upper = VertexFormat.fromHalf((short) (half + 1));
+			check(Math.abs(upper - f) >= error, f + " is nearer to " + upper + " than " + back);
+		}
+	}
+
+	private static void testHalfSpecialValues() {
+		check(VertexFormat.toHalf(0f) == 0, "+0");
+		check(VertexFormat.toHalf(-0f) == (short) 0x8000, "-0");
+		check(Float.floatToIntBits(VertexFormat.fromHalf((short) 0x8000)) == Float.floatToIntBits(-0f), "-0 back");
+
+		// subnormals: the smallest one, half of it ties to zero, a bit more
+		// than half rounds up to it
+		check(VertexFormat.toHalf(0x1p-24f) == 1, "smallest subnormal");
+		check(VertexFormat.fromHalf((short) 1) == 0x1p-24f, "smallest subnormal back");
+		check(VertexFormat.toHalf(0x1p-25f) == 0, "half the smallest subnormal");
+		check(VertexFormat.toHalf(Math.nextUp(0x1p-25f)) == 1, "just over half the smallest subnormal");
+		check(VertexFormat.toHalf(-0x1p-24f) == (short) 0x8001, "negative subnormal");
+		check(VertexFormat.toHalf(0x3ffp-24f) == 0x3ff, "largest subnormal");
+		check(VertexFormat.toHalf(0x1p-14f) == 0x400, "smallest normal");
+
+		// overflow
+		check(VertexFormat.toHalf(65504f) == 0x7bff, "largest half");
+		check(VertexFormat.toHalf(65519f) == 0x7bff, "just below the overflow");
+		check(VertexFormat.toHalf(65520f) == 0x7c00, "65520 overflows");
+		check(VertexFormat.toHalf(1e6f) == 0x7c00, "large");
+		check(VertexFormat.toHalf(Float.POSITIVE_INFINITY) == 0x7c00, "+inf");
+		check(VertexFormat.toHalf(Float.NEGATIVE_INFINITY) == (short) 0xfc00, "-inf");
+		check(VertexFormat.fromHalf((short) 0x7c00) == Float.POSITIVE_INFINITY, "+inf back");
+		check(Float.isNaN(VertexFormat.fromHalf(VertexFormat.toHalf(Float.NaN))), "NaN");
+	}
+
+	private static void testNormals() {
+		float[][] axes = { { 1, 0, 0 }, { -1, 0, 0 }, { 0, 1, 0 }, { 0, -1, 0 }, { 0, 0, 1 }, { 0, 0, -1 } };
+		for (float[] axis : axes) {
+			int packed = VertexFormat.packNormal(axis[0], axis[1], axis[2]);
+			for (int c = 0; c < 3; c++) {
+				check(VertexFormat.unpackNormal(packed, c) == axis[c], "axis component " + c);
+			}
+			check(packed >>> 30 == 0, "w is zero");
+		}
+
+		Random random = new Random(2);
+		double maxError = 0;
+		for (int i = 0; i < 100000; i++) {
+			float x = (float) random.nextGaussian();
+			float y = (float) random.nextGaussian();
+			float z = (float) random.nextGaussian();
+			float length = (float) Math.sqrt(x * x + y * y + z * z);
+			x /= length;
+			y /= length;
+			z /= length;
+			int packed = VertexFormat.packNormal(x, y, z);
+			maxError = Math.max(maxError, Math.abs(VertexFormat.unpackNormal(packed, 0) - x));
+			maxError = Math.max(maxError, Math.abs(VertexFormat.unpackNormal(packed, 1) - y));
+			maxError = Math.max(maxError, Math.abs(VertexFormat.unpackNormal(packed, 2) - z));
+		}
+		// half a step of the 511 steps per unit
+		check(maxError <= 0.5 / 511 + 1e-6, "normal error " + maxError);
+
+		// out of range components are clamped
+		int packed = VertexFormat.packNormal(2, -2, 0);
+		check(VertexFormat.unpackNormal(packed, 0) == 1 && VertexFormat.unpackNormal(packed, 1) == -1, "clamped");
+	}
+
+	private static void testByteColors() {
+		for (int b = 0; b < 256; b++) {
+			float f = VertexFormat.fromUnsignedByte((byte) b);
+			check(VertexFormat.toUnsignedByte(f) == (byte) b, "byte " + b);
+		}
+		double maxError = 0;
+		for (int i = 0; i <= 100000; i++) {
+			float f = i / 100000f;
+			maxError = Math.max(maxError, Math.abs(VertexFormat.fromUnsignedByte(VertexFormat.toUnsignedByte(f)) - f));
+		}
+		check(maxError <= 0.5 / 255 + 1e-6, "color error " + maxError);
+		check(VertexFormat.toUnsignedByte(-1) == 0, "clamped below");
+		check(VertexFormat.toUnsignedByte(2) == (byte) 255, "clamped above");
+	}
+
+	private static void testHalfPrecise() {
+		// the island terrain, a unit square of 120 grid points
+		check(VertexFormat.isHalfPrecise(.5f, 1f / 119), "radius 60");
+		// large grids in the same unit square
+		check(!VertexFormat.isHalfPrecise(.5f, 1f / 1023), "1024 grid");
+		check(!VertexFormat.isHalfPrecise(.5f, 1f / 4095), "4096 grid");
+		check(!VertexFormat.isHalfPrecise(1e5f, 1000), "beyond the half range");
+	}
+
+	private static String hex(int value) {
+		return Integer.toHexString(value);
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package org.lwjglb.game.engine.terrain;
+
+import java.util.Random;
+
+/**
+ * Checks {@link HeightfieldRayCaster} against intersecting the ray with every
+ * triangle of the grid. Run as a program, it throws on the first failure.
+ */
+public class HeightfieldRayCasterTest {
+
+	private static final float MAX_T = 100;
+
+	public static void main(String[] args) {
+		testRandomRays();
+		testVerticalRays();
+		testMisses();
+		System.out.println("HeightfieldRayCasterTest passed");
+	}
+
+	/**
+	 * Random rays, some axis aligned, against rough and flat random grids of
+	 * random sizes.
+	 */
+	private static void testRandomRays() {
+		Random random = new Random(5);
+		int hits = 0;
+		for (int trial = 0; trial < 40; trial++) {
+			TerrainGrid grid = randomGrid(random, 2 + random.nextInt(40), 2 + random.nextInt(40),
+					trial % 2 == 0 ? 1 : .05f);
+			HeightfieldRayCaster caster = new HeightfieldRayCaster(grid);
+			for (int i = 0; i < 500; i++) {
+				float ox = random.nextFloat() * 2 - 1;
+				float oy = random.nextFloat() * 2 - .2f;
+				float oz = random.nextFloat() * 2 - 1;
+				float dx = random.nextFloat() * 2 - 1;
+				float dy = random.nextFloat() * 2 - 1.3f;
+				float dz = random.nextFloat() * 2 - 1;
+				if (i % 13 == 0) {
+					dx = 0;
+				} else if (i % 17 == 0) {
+					dz = 0;
+				}
+				float t = caster.intersect(ox, oy, oz, dx, dy, dz, MAX_T);
+				double expected = bruteForce(grid, ox, oy, oz, dx, dy, dz, MAX_T);
+				checkHit(t, expected, ox, oy, oz, dx, dy, dz);
+				if (expected >= 0) {
+					hits++;
+				}
+			}
+		}
+		check(hits > 1000, "too few hits to be meaningful: " + hits);
+	}
+
+	/**
+	 * Rays straight down hit the interpolated height of the triangle below.
+	 */
+	private static void testVerticalRays() {
+		Random random = new Random(6);
+		TerrainGrid grid = randomGrid(random, 33, 20, 1);
+		HeightfieldRayCaster caster = new HeightfieldRayCaster(grid);
+		for (int i = 0; i < 1000; i++) {
+			float x = -.5f + random.nextFloat();
+			float z = -.5f + random.nextFloat();
+			float t = caster.intersect(x, 5, z, 0, -1, 0, MAX_T);
+			double expected = bruteForce(grid, x, 5, z, 0, -1, 0, MAX_T);
+			checkHit(t, expected, x, 5, z, 0, -1, 0);
+			check(t >= 0, "vertical ray missed at " + x + ", " + z);
+		}
+	}
+
+	private static void testMisses() {
+		TerrainGrid grid = randomGrid(new Random(7), 16, 16, 1);
+		HeightfieldRayCaster caster = new HeightfieldRayCaster(grid);
+		check(caster.intersect(0, 5, 0, 0, 1, 0, MAX_T) == -1, "ray pointing up");
+		check(caster.intersect(0, 5, 0, 1, 0, 0, MAX_T) == -1, "ray above the terrain");
+		check(caster.intersect(2, 0, 2, 0, -1, 0, MAX_T) == -1, "ray beside the terrain");
+		check(caster.intersect(0, 5, 0, 0, -1, 0, 1) == -1, "ray ending before the terrain");
+	}
+
+	private static void checkHit(float t, double expected, float ox, float oy, float oz, float dx, float dy,
+			float dz) {
+		if (Math.abs(t - expected) > 1e-3 * Math.max(1, Math.abs(expected))) {
+			throw new AssertionError("ray " + ox + ", " + oy + ", " + oz + " towards " + dx + ", " + dy + ", " + dz
+					+ " hit at " + t + ", expected " + expected);
+		}
+	}
+
+	private static TerrainGrid randomGrid(Random random, int width, int depth, float roughness) {
+		float[] heights = new float[width * depth];
+		for (int i = 0; i < heights.length; i++) {
+			heights[i] = random.nextFloat() * roughness;
+		}
+		return new TerrainGrid(width, depth, heights, -.5f, -.5f, 1f / (width - 1), 1f / (depth - 1));
+	}
+
+	/**
+	 * Intersects the ray with both triangles of every cell, split like the
+	 * terrain mesh.
+	 *
+	 * @return the smallest {@code t} of a hit, or -1
+	 */
+	private static double bruteForce(TerrainGrid grid, double ox, double oy, double oz, double dx, double dy,
+			double dz, double maxT) {
+		double best = -1;
+		for (int z = 0; z < grid.getDepth() - 1; z++) {
+			for (int x = 0; x < grid.getWidth() - 1; x++) {
+				double x0 = grid.getStartX() + x * grid.getXStep();
+				double x1 = grid.getStartX() + (x + 1) * grid.getXStep();
+				double z0 = grid.getStartZ() + z * grid.getZStep();
+				double z1 = grid.getStartZ() + (z + 1) * grid.getZStep();
+				double h00 = grid.getHeight(x, z);
+				double h10 = grid.getHeight(x + 1, z);
+				double h01 = grid.getHeight(x, z + 1);
+				double h11 = grid.getHeight(x + 1, z + 1);
+				double t = intersectTriangle(ox, oy, oz, dx, dy, dz, x0, h00, z0, x1, h10, z0, x0, h01, z1);
+				if (t >= 0 && t <= maxT && (best < 0 || t < best)) {
+					best = t;
+				}
+				t = intersectTriangle(ox, oy, oz, dx, dy, dz, x1, h11, z1, x0, h01, z1, x1, h10, z0);
+				if (t >= 0 && t <= maxT && (best < 0 || t < best)) {
+					best = t;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Moeller-Trumbore ray triangle intersection, with a small tolerance on
+	 * the edges.
+	 *
+	 * @return {@code t} of the hit, or -1
+	 */
+	private static double intersectTriangle(double ox, double oy, double oz, double dx, double dy, double dz,
+			double ax, double ay, double az, double bx, double by, double bz, double cx, double cy, double cz) {
+		double e1x = bx - ax, e1y = by - ay, e1z = bz - az;
+		double e2x = cx - ax, e2y = cy - ay, e2z = cz - az;
+		double px = dy * e2z - dz * e2y, py = dz * e2x - dx * e2z, pz = dx * e2y - dy * e2x;
+		double det = e1x * px + e1y * py + e1z * pz;
+		if (det == 0) {
+			return -1;
+		}
+		double sx = ox - ax, sy = oy - ay, sz = oz - az;
+		double u = (sx * px + sy * py + sz * pz) / det;
+		double qx = sy * e1z - sz * e1y, qy = sz * e1x - sx * e1z, qz = sx * e1y - sy * e1x;
+		double v = (dx * qx + dy * qy + dz * qz) / det;
+		double epsilon = 1e-6;
+		if (u < -epsilon || v < -epsilon || u + v > 1 + epsilon) {
+			return -1;
+		}
+		double t = (e2x * qx + e2y * qy + e2z * qz) / det;
+		return t >= 0 ? t : -1;
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package org.lwjglb.game.engine.terrain;
+
+import java.util.Random;
+
+import org.joml.Vector3f;
+
+/**
+ * Checks the height and normal queries of {@link TerrainGrid} against a
+ * straightforward bilinear interpolation in double precision. Run as a
+ * program, it throws on the first failure.
+ */
+public class TerrainGridTest {
+
+	public static void main(String[] args) {
+		testGridPoints();
+		testPlane();
+		testBilinear();
+		testClamping();
+		System.out.println("TerrainGridTest passed");
+	}
+
+	/**
+	 * Every grid point gives back its stored height.
+	 */
+	private static void testGridPoints() {
+		TerrainGrid grid = randomGrid(new Random(1), 17, 9);
+		for (int z = 0; z < grid.getDepth(); z++) {
+			for (int x = 0; x < grid.getWidth(); x++) {
+				float height = grid.interpolateHeight(grid.getStartX() + x * grid.getXStep(),
+						grid.getStartZ() + z * grid.getZStep());
+				check(Math.abs(height - grid.getHeight(x, z)) <= 1e-5f, "grid point " + x + ", " + z);
+			}
+		}
+	}
+
+	/**
+	 * A planar grid is interpolated exactly and has the normal of the plane
+	 * everywhere.
+	 */
+	private static void testPlane() {
+		int width = 12;
+		int depth = 7;
+		float a = .3f;
+		float b = -.7f;
+		float[] heights = new float[width * depth];
+		TerrainGrid grid = new TerrainGrid(width, depth, heights, -2, 1, .5f, .25f);
+		for (int z = 0; z < depth; z++) {
+			for (int x = 0; x < width; x++) {
+				heights[z * width + x] = a * (-2 + x * .5f) + b * (1 + z * .25f) + 4;
+			}
+		}
+		Vector3f expected = new Vector3f(-a, 1, -b).normalize();
+		Vector3f normal = new Vector3f();
+		Random random = new Random(2);
+		for (int i = 0; i < 10000; i++) {
+			float x = -2 + random.nextFloat() * (width - 1) * .5f;
+			float z = 1 + random.nextFloat() * (depth - 1) * .25f;
+			check(Math.abs(grid.interpolateHeight(x, z) - (a * x + b * z + 4)) <= 1e-5f, "plane height");
+			grid.interpolateNormal(x, z, normal);
+			check(normal.distance(expected) <= 1e-5f, "plane normal " + normal);
+		}
+	}
+
+	/**
+	 * Random points of a random grid against the reference, with the normal
+	 * checked against central differences of the height inside a cell.
+	 */
+	private static void testBilinear() {
+		Random random = new Random(3);
+		Vector3f normal = new Vector3f();
+		for (int trial = 0; trial < 20; trial++) {
+			TerrainGrid grid = randomGrid(random, 2 + random.nextInt(40), 2 + random.nextInt(40));
+			for (int i = 0; i < 1000; i++) {
+				int cellX = random.nextInt(grid.getWidth() - 1);
+				int cellZ = random.nextInt(grid.getDepth() - 1);
+				// stay away from the cell borders, where the slope jumps
+				double fx = .01 + random.nextDouble() * .98;
+				double fz = .01 + random.nextDouble() * .98;
+				float x = (float) (grid.getStartX() + (cellX + fx) * grid.getXStep());
+				float z = (float) (grid.getStartZ() + (cellZ + fz) * grid.getZStep());
+
+				double expected = bilinear(grid, x, z);
+				check(Math.abs(grid.interpolateHeight(x, z) - expected) <= 1e-5, "height at " + x + ", " + z);
+
+				double h = 1e-3 * Math.min(grid.getXStep(), grid.getZStep());
+				double slopeX = (bilinear(grid, x + h, z) - bilinear(grid, x - h, z)) / (2 * h);
+				double slopeZ = (bilinear(grid, x, z + h) - bilinear(grid, x, z - h)) / (2 * h);
+				double length = Math.sqrt(slopeX * slopeX + 1 + slopeZ * slopeZ);
+				grid.interpolateNormal(x, z, normal);
+				check(Math.abs(normal.x + slopeX / length) <= 1e-3 && Math.abs(normal.y - 1 / length) <= 1e-3
+						&& Math.abs(normal.z + slopeZ / length) <= 1e-3, "normal at " + x + ", " + z);
+			}
+		}
+	}
+
+	/**
+	 * Points outside of the grid get the height of the nearest border point.
+	 */
+	private static void testClamping() {
+		TerrainGrid grid = randomGrid(new Random(4), 5, 6);
+		float endX = grid.getStartX() + (grid.getWidth() - 1) * grid.getXStep();
+		float endZ = grid.getStartZ() + (grid.getDepth() - 1) * grid.getZStep();
+		check(grid.interpolateHeight(grid.getStartX() - 10, grid.getStartZ() - 10) == grid.getHeight(0, 0),
+				"before the first corner");
+		check(grid.interpolateHeight(endX + 10, endZ + 10) == grid.getHeight(grid.getWidth() - 1,
+				grid.getDepth() - 1), "past the last corner");
+		float z = grid.getStartZ() + 2.5f * grid.getZStep();
+		check(grid.interpolateHeight(endX + 1, z) == grid.interpolateHeight(endX, z), "past the last column");
+		Vector3f normal = grid.interpolateNormal(grid.getStartX() - 1, z, new Vector3f());
+		check(Math.abs(normal.length() - 1) <= 1e-6f, "unit normal outside");
+	}
+
+	private static TerrainGrid randomGrid(Random random, int width, int depth) {
+		float[] heights = new float[width * depth];
+		for (int i = 0; i < heights.length; i++) {
+			heights[i] = random.nextFloat() * 2 - 1;
+		}
+		return new TerrainGrid(width, depth, heights, random.nextFloat() - .5f, random.nextFloat() - .5f,
+				.1f + random.nextFloat(), .1f + random.nextFloat());
+	}
+
+	/**
+	 * Bilinear interpolation inside the grid, in double precision.
+	 */
+	private static double bilinear(TerrainGrid grid, double x, double z) {
+		double column = (x - grid.getStartX()) / grid.getXStep();
+		double row = (z - grid.getStartZ()) / grid.getZStep();
+		int x0 = Math.min((int) column, grid.getWidth() - 2);
+		int z0 = Math.min((int) row, grid.getDepth() - 2);
+		double fx = column - x0;
+		double fz = row - z0;
+		return grid.getHeight(x0, z0) * (1 - fx) * (1 - fz) + grid.getHeight(x0 + 1, z0) * fx * (1 - fz)
+				+ grid.getHeight(x0, z0 + 1) * (1 - fx) * fz + grid.getHeight(x0 + 1, z0 + 1) * fx * fz;
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+}